@@ -0,0 +1,80 @@
+package me.realized.de.arenaregen.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import me.realized.de.arenaregen.util.BlockInfo;
+import me.realized.de.arenaregen.zone.snapshot.BlockStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Lookups of stored blocks by position, which the diff, the listeners and every reset go through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BlockStoreBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    private BlockStore blocks;
+    private final int[] indices = new int[LOOKUPS];
+
+    @Setup
+    public void setup() {
+        blocks = new ZoneFixture(StandIns.world("world"), 0, 64, 0, 64, 32, 64, 1L).getBlocks();
+        final Random random = new Random(2L);
+
+        for (int i = 0; i < LOOKUPS; i++) {
+            indices[i] = random.nextInt(blocks.getVolume());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void get(final Blackhole blackhole) {
+        for (final int index : indices) {
+            final BlockInfo info = blocks.get(blocks.getX(index), blocks.getY(index), blocks.getZ(index));
+            blackhole.consume(info);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int isAir() {
+        int air = 0;
+
+        for (final int index : indices) {
+            if (blocks.isAir(blocks.getX(index), blocks.getY(index), blocks.getZ(index))) {
+                air++;
+            }
+        }
+
+        return air;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int toIndex() {
+        int sum = 0;
+
+        for (final int index : indices) {
+            sum += blocks.toIndex(blocks.getX(index), blocks.getY(index), blocks.getZ(index));
+        }
+
+        return sum;
+    }
+}
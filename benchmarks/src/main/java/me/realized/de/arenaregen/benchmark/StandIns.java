@@ -0,0 +1,163 @@
+package me.realized.de.arenaregen.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.UUID;
+import me.realized.de.arenaregen.nms.NMS;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+/**
+ * In-memory stand-ins for the parts of the Bukkit API used by the benchmarked code. They are proxies, so they keep
+ * compiling when the API gains methods, and only answer the methods the benchmarks need. Every other method throws.
+ * The proxy overhead is part of every measurement and the same across commits.
+ */
+public final class StandIns {
+
+    private StandIns() {}
+
+    public static World world(final String name) {
+        final UUID uid = UUID.nameUUIDFromBytes(name.getBytes());
+        return proxy(World.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getUID":
+                    return uid;
+                case "getMinHeight":
+                    return 0;
+                case "getMaxHeight":
+                    return 256;
+                default:
+                    return object(proxy, method.getName(), args, "World{" + name + "}");
+            }
+        });
+    }
+
+    /**
+     * A handler that cannot read the storage of snapshots, like the fallback handler, so that sections are compared
+     * block by block through the API.
+     */
+    public static NMS handler() {
+        return proxy(NMS.class, (proxy, method, args) -> {
+            if (method.getName().equals("readStateIds")) {
+                return false;
+            }
+
+            return object(proxy, method.getName(), args, "NMS");
+        });
+    }
+
+    public static Block block(final World world, final int x, final int y, final int z) {
+        return proxy(Block.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getWorld":
+                    return world;
+                case "getX":
+                    return x;
+                case "getY":
+                    return y;
+                case "getZ":
+                    return z;
+                default:
+                    return object(proxy, method.getName(), args, "Block{" + x + "," + y + "," + z + "}");
+            }
+        });
+    }
+
+    public static Chunk chunk(final World world, final ChunkData data) {
+        final ChunkSnapshot snapshot = snapshot(world, data);
+        return proxy(Chunk.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getWorld":
+                    return world;
+                case "getX":
+                    return data.chunkX;
+                case "getZ":
+                    return data.chunkZ;
+                case "isLoaded":
+                    return true;
+                case "getChunkSnapshot":
+                    return snapshot;
+                default:
+                    return object(proxy, method.getName(), args, "Chunk{" + data.chunkX + "," + data.chunkZ + "}");
+            }
+        });
+    }
+
+    public static ChunkSnapshot snapshot(final World world, final ChunkData data) {
+        return proxy(ChunkSnapshot.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getX":
+                    return data.chunkX;
+                case "getZ":
+                    return data.chunkZ;
+                case "getWorldName":
+                    return world.getName();
+                case "getBlockType":
+                    return data.getType((Integer) args[0], (Integer) args[1], (Integer) args[2]);
+                case "getData":
+                    return (int) data.getData((Integer) args[0], (Integer) args[1], (Integer) args[2]);
+                case "isSectionEmpty":
+                    return false;
+                default:
+                    return object(proxy, method.getName(), args, "ChunkSnapshot{" + data.chunkX + "," + data.chunkZ + "}");
+            }
+        });
+    }
+
+    private static Object object(final Object proxy, final String name, final Object[] args, final String description) {
+        switch (name) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return description;
+            default:
+                throw new UnsupportedOperationException(description + "." + name);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(StandIns.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    /**
+     * Block types and data of one chunk, modifiable between snapshots.
+     */
+    public static final class ChunkData {
+
+        private final int chunkX, chunkZ;
+        private final Material[] types = new Material[16 * 16 * 256];
+        private final byte[] data = new byte[types.length];
+
+        public ChunkData(final int chunkX, final int chunkZ) {
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            Arrays.fill(types, Material.AIR);
+        }
+
+        public Material getType(final int x, final int y, final int z) {
+            return types[index(x, y, z)];
+        }
+
+        public byte getData(final int x, final int y, final int z) {
+            return data[index(x, y, z)];
+        }
+
+        public void set(final int x, final int y, final int z, final Material type, final byte data) {
+            types[index(x, y, z)] = type;
+            this.data[index(x, y, z)] = data;
+        }
+
+        private static int index(final int x, final int y, final int z) {
+            return y << 8 | z << 4 | x;
+        }
+    }
+}
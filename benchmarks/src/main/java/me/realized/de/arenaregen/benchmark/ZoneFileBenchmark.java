@@ -0,0 +1,79 @@
+package me.realized.de.arenaregen.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import me.realized.de.arenaregen.zone.snapshot.SectionStore;
+import me.realized.de.arenaregen.zone.snapshot.ZoneFile;
+import me.realized.de.arenaregen.zone.snapshot.ZoneSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saving and loading a zone file. Sections are written on the first save only, like when a zone is saved again after
+ * a reload, so saving measures the zone file itself. Loading reads the zone file and its sections from disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ZoneFileBenchmark {
+
+    private File folder;
+    private File file;
+    private ZoneSnapshot snapshot;
+
+    @Setup
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("arenaregen-bench").toFile();
+        file = new File(folder, "arena" + ZoneFile.EXTENSION);
+
+        final ZoneFixture fixture = new ZoneFixture(StandIns.world("world"), 0, 64, 0, 64, 32, 64, 1L);
+        final SectionStore store = new SectionStore(new File(folder, "sections"));
+        fixture.getBlocks().intern(store);
+        snapshot = new ZoneSnapshot("world", 0, 64, 0, 63, 95, 63, fixture.getBlocks(), Collections.emptyList());
+        ZoneFile.write(file, snapshot, store);
+    }
+
+    @TearDown
+    public void tearDown() {
+        delete(folder);
+    }
+
+    @Benchmark
+    public File save() throws IOException {
+        ZoneFile.write(file, snapshot, new SectionStore(new File(folder, "sections")));
+        return file;
+    }
+
+    // A new store per load, so that sections are read from their files instead of being shared with the last load
+    @Benchmark
+    public ZoneSnapshot load() throws IOException {
+        return ZoneFile.read(file, new SectionStore(new File(folder, "sections")));
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
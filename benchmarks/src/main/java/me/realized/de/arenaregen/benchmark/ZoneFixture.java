@@ -0,0 +1,113 @@
+package me.realized.de.arenaregen.benchmark;
+
+import java.util.Random;
+import me.realized.de.arenaregen.benchmark.StandIns.ChunkData;
+import me.realized.de.arenaregen.util.BlockInfo;
+import me.realized.de.arenaregen.zone.snapshot.BlockStore;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+/**
+ * A zone shaped like a typical arena: a solid floor, scattered walls and mostly air above. The blocks and the world are
+ * generated from a fixed seed, so every run and every commit measures the same contents.
+ */
+public final class ZoneFixture {
+
+    private static final Material[] FLOOR = {Material.STONE, Material.OBSIDIAN};
+    private static final Material[] WALLS = {Material.STONE, Material.OBSIDIAN, Material.TNT};
+
+    private final World world;
+    private final Location min, max;
+    private final BlockStore blocks;
+    private final int minChunkX, minChunkZ, chunksZ;
+    private final ChunkData[] chunks;
+
+    public ZoneFixture(final World world, final int minX, final int minY, final int minZ, final int sizeX, final int sizeY, final int sizeZ, final long seed) {
+        this.world = world;
+        this.min = new Location(world, minX, minY, minZ);
+        this.max = new Location(world, minX + sizeX - 1, minY + sizeY - 1, minZ + sizeZ - 1);
+        this.blocks = new BlockStore(sizeX, sizeY, sizeZ);
+        this.minChunkX = minX >> 4;
+        this.minChunkZ = minZ >> 4;
+        this.chunksZ = ((minZ + sizeZ - 1) >> 4) - minChunkZ + 1;
+        this.chunks = new ChunkData[(((minX + sizeX - 1) >> 4) - minChunkX + 1) * chunksZ];
+
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new ChunkData(minChunkX + i / chunksZ, minChunkZ + i % chunksZ);
+        }
+
+        final Random random = new Random(seed);
+
+        for (int x = 0; x < sizeX; x++) {
+            for (int z = 0; z < sizeZ; z++) {
+                for (int y = 0; y < sizeY; y++) {
+                    final Material type;
+
+                    if (y < 4) {
+                        type = FLOOR[random.nextInt(FLOOR.length)];
+                    } else if (y < sizeY / 2 && random.nextInt(10) == 0) {
+                        type = WALLS[random.nextInt(WALLS.length)];
+                    } else {
+                        continue;
+                    }
+
+                    set(x, y, z, type, (byte) 0);
+                    blocks.set(x, y, z, new BlockInfo(type, (byte) 0));
+                }
+            }
+        }
+    }
+
+    /**
+     * Changes the given fraction of the zone's positions in the world, as a match would.
+     *
+     * @return Indices of the changed positions in the zone's block store.
+     */
+    public int[] change(final double fraction, final long seed) {
+        final Random random = new Random(seed);
+        final int[] changed = new int[(int) (blocks.getVolume() * fraction)];
+
+        for (int i = 0; i < changed.length; i++) {
+            final int index = random.nextInt(blocks.getVolume());
+            final int x = blocks.getX(index), y = blocks.getY(index), z = blocks.getZ(index);
+            set(x, y, z, blocks.isAir(x, y, z) ? Material.WATER : Material.AIR, (byte) 0);
+            changed[i] = index;
+        }
+
+        return changed;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public Location getMin() {
+        return min;
+    }
+
+    public Location getMax() {
+        return max;
+    }
+
+    public BlockStore getBlocks() {
+        return blocks;
+    }
+
+    public Chunk[] getChunks() {
+        final Chunk[] result = new Chunk[chunks.length];
+
+        for (int i = 0; i < chunks.length; i++) {
+            result[i] = StandIns.chunk(world, chunks[i]);
+        }
+
+        return result;
+    }
+
+    private void set(final int x, final int y, final int z, final Material type, final byte data) {
+        final int worldX = min.getBlockX() + x, worldZ = min.getBlockZ() + z;
+        final ChunkData chunk = chunks[((worldX >> 4) - minChunkX) * chunksZ + (worldZ >> 4) - minChunkZ];
+        chunk.set(worldX & 15, min.getBlockY() + y, worldZ & 15, type, data);
+    }
+}
@@ -0,0 +1,50 @@
+package me.realized.de.arenaregen.util;
+
+import java.util.concurrent.TimeUnit;
+import me.realized.de.arenaregen.benchmark.StandIns;
+import me.realized.de.arenaregen.benchmark.StandIns.ChunkData;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The per-block comparison of the diff, for a block that matches and one that differs only in its data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BlockInfoBenchmark {
+
+    private final BlockInfo info = new BlockInfo(Material.STONE, (byte) 1);
+    private ChunkSnapshot snapshot;
+
+    @Setup
+    public void setup() {
+        final ChunkData data = new ChunkData(0, 0);
+        data.set(0, 64, 0, Material.STONE, (byte) 1);
+        data.set(1, 64, 0, Material.STONE, (byte) 2);
+        snapshot = StandIns.snapshot(StandIns.world("world"), data);
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return info.matches(snapshot, 0, 64, 0);
+    }
+
+    @Benchmark
+    public boolean differs() {
+        return info.matches(snapshot, 1, 64, 0);
+    }
+}
@@ -0,0 +1,79 @@
+package me.realized.de.arenaregen.zone;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import me.realized.de.arenaregen.benchmark.StandIns;
+import me.realized.de.arenaregen.benchmark.ZoneFixture;
+import me.realized.de.arenaregen.util.IntList;
+import me.realized.de.arenaregen.zone.snapshot.BlockStore;
+import org.bukkit.Chunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The comparison of a zone's chunks against its stored blocks, which every reset runs on the worker pool. Covers the
+ * full scan used when changes were not tracked and the scan of tracked positions only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ZoneDiffBenchmark {
+
+    // Fraction of the zone's positions changed in the world before diffing
+    @Param({"0", "0.001", "0.05"})
+    private double changed;
+
+    private BlockStore blocks;
+    private ZoneDiff diff;
+    private BitSet tracked;
+
+    @Setup
+    public void setup() {
+        final ZoneFixture fixture = new ZoneFixture(StandIns.world("world"), 0, 64, 0, 64, 32, 64, 1L);
+        tracked = new BitSet(fixture.getBlocks().getVolume());
+
+        for (final int index : fixture.change(changed, 2L)) {
+            tracked.set(index);
+        }
+
+        blocks = fixture.getBlocks();
+        diff = new ZoneDiff(StandIns.handler(), blocks, fixture.getMin(), fixture.getMax());
+
+        for (final Chunk chunk : fixture.getChunks()) {
+            diff.capture(chunk);
+        }
+    }
+
+    // Every section one after another, as the worker pool runs them for a reset without tracked changes
+    @Benchmark
+    public int[] diffAll() {
+        final IntList changed = new IntList();
+
+        for (int sectionY = 0; sectionY < blocks.getSectionsY(); sectionY++) {
+            for (int sectionZ = 0; sectionZ < blocks.getSectionsZ(); sectionZ++) {
+                for (int sectionX = 0; sectionX < blocks.getSectionsX(); sectionX++) {
+                    changed.addAll(diff.diffSection(sectionX, sectionY, sectionZ));
+                }
+            }
+        }
+
+        return changed.toArray();
+    }
+
+    @Benchmark
+    public int[] diffTracked() {
+        return diff.diff(tracked);
+    }
+}
@@ -0,0 +1,114 @@
+package me.realized.de.arenaregen.zone;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import me.realized.de.arenaregen.benchmark.StandIns;
+import me.realized.de.arenaregen.benchmark.ZoneFixture;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The lookup run by the block listeners for every event: finding the zone at a block and checking whether the block is
+ * part of the zone's snapshot. Half of the looked up blocks are inside of a zone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ZoneLookupBenchmark {
+
+    private static final int LOOKUPS = 1024;
+    private static final int ZONE_SIZE = 32, ZONE_SPACING = 48;
+
+    @Param({"1", "50", "500"})
+    private int zones;
+
+    private final ZoneIndex index = new ZoneIndex();
+    private final Block[] lookups = new Block[LOOKUPS];
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        final World world = StandIns.world("world");
+        final int perRow = (int) Math.ceil(Math.sqrt(zones));
+
+        for (int i = 0; i < zones; i++) {
+            final ZoneFixture fixture = new ZoneFixture(world, i % perRow * ZONE_SPACING, 64, i / perRow * ZONE_SPACING, ZONE_SIZE, ZONE_SIZE, ZONE_SIZE, i);
+            index.add(zone(fixture));
+        }
+
+        final Random random = new Random(1L);
+        final int extent = perRow * ZONE_SPACING;
+
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (i % 2 == 0) {
+                final int zone = random.nextInt(zones);
+                lookups[i] = StandIns.block(world, zone % perRow * ZONE_SPACING + random.nextInt(ZONE_SIZE), 64 + random.nextInt(ZONE_SIZE),
+                    zone / perRow * ZONE_SPACING + random.nextInt(ZONE_SIZE));
+            } else {
+                // The gaps between zones
+                lookups[i] = StandIns.block(world, random.nextInt(extent) / ZONE_SPACING * ZONE_SPACING + ZONE_SIZE + random.nextInt(ZONE_SPACING - ZONE_SIZE),
+                    64 + random.nextInt(ZONE_SIZE), random.nextInt(extent));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int isCached() {
+        int cached = 0;
+
+        for (final Block block : lookups) {
+            final ResetZone zone = getZoneAt(block.getWorld(), block.getX(), block.getY(), block.getZ());
+
+            if (zone != null && zone.isCached(block)) {
+                cached++;
+            }
+        }
+
+        return cached;
+    }
+
+    // Same as the lookup of the zone manager
+    private ResetZone getZoneAt(final World world, final int x, final int y, final int z) {
+        for (final ResetZone zone : index.get(world, x >> 4, z >> 4)) {
+            if (zone.contains(world, x, y, z)) {
+                return zone;
+            }
+        }
+
+        return null;
+    }
+
+    // A zone needs the whole extension to be constructed, so only the fields read by the lookup are set.
+    private static ResetZone zone(final ZoneFixture fixture) throws ReflectiveOperationException {
+        final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        final Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+        unsafeField.setAccessible(true);
+        final ResetZone zone = (ResetZone) unsafeClass.getMethod("allocateInstance", Class.class).invoke(unsafeField.get(null), ResetZone.class);
+        set(zone, "min", fixture.getMin());
+        set(zone, "max", fixture.getMax());
+        set(zone, "blocks", fixture.getBlocks());
+        return zone;
+    }
+
+    private static void set(final ResetZone zone, final String name, final Object value) throws ReflectiveOperationException {
+        final Field field = ResetZone.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(zone, value);
+    }
+}
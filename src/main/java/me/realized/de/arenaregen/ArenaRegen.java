@@ -1,5 +1,6 @@
 package me.realized.de.arenaregen;
 
+import java.util.concurrent.TimeUnit;
 import lombok.Getter;
 import me.realized.de.arenaregen.command.ArenaregenCommand;
 import me.realized.de.arenaregen.config.Config;
@@ -8,6 +9,9 @@ import me.realized.de.arenaregen.nms.LatestHandler;
 import me.realized.de.arenaregen.nms.MoreLatestHandler;
 import me.realized.de.arenaregen.nms.NMS;
 import me.realized.de.arenaregen.selection.SelectionManager;
+import me.realized.de.arenaregen.util.TickBudget;
+import me.realized.de.arenaregen.util.WorkerPool;
+import me.realized.de.arenaregen.zone.MetricsWriter;
 import me.realized.de.arenaregen.zone.ResetZoneManager;
 import me.realized.duels.api.extension.DuelsExtension;
 
@@ -20,9 +24,14 @@ public class ArenaRegen extends DuelsExtension {
     @Getter
     private NMS handler;
     @Getter
+    private WorkerPool workers;
+    @Getter
+    private TickBudget tickBudget;
+    @Getter
     private SelectionManager selectionManager;
     @Getter
     private ResetZoneManager zoneManager;
+    private MetricsWriter metricsWriter;
 
     @Override
     public void onEnable() {
@@ -34,14 +43,42 @@ public class ArenaRegen extends DuelsExtension {
 
         this.handler = new MoreLatestHandler();
 
+        final int threads = configuration.getWorkerThreads() > 0 ? configuration.getWorkerThreads() : Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        this.workers = new WorkerPool("ArenaRegen Worker", threads);
+        info("Using " + threads + (workers.isVirtual() ? " virtual" : "") + " worker threads.");
+
+        this.tickBudget = new TickBudget(api.getServer(), configuration.getTickBudget(), configuration.isAdaptiveTickBudget());
+        tickBudget.runTaskTimer(api, 1L, 1L);
+
         this.selectionManager = new SelectionManager(this, api);
         this.zoneManager = new ResetZoneManager(this, api);
+
+        if (configuration.getMetricsInterval() > 0) {
+            final long interval = configuration.getMetricsInterval() * 20L;
+            this.metricsWriter = new MetricsWriter(this, zoneManager);
+            metricsWriter.runTaskTimer(api, interval, interval);
+        }
+
         api.registerSubCommand("duels", new ArenaregenCommand(this, api));
     }
 
     @Override
     public void onDisable() {
         zoneManager.save();
+        zoneManager.getScheduler().cancel();
+        tickBudget.cancel();
+
+        if (metricsWriter != null) {
+            metricsWriter.cancel();
+        }
+
+        try {
+            if (!workers.shutdown(10, TimeUnit.SECONDS)) {
+                error("Timed out waiting for worker threads to finish.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Override
@@ -3,10 +3,12 @@ package me.realized.de.arenaregen.command;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import me.realized.de.arenaregen.ArenaRegen;
+import me.realized.de.arenaregen.command.commands.CopyCommand;
 import me.realized.de.arenaregen.command.commands.CreateCommand;
 import me.realized.de.arenaregen.command.commands.DeleteCommand;
 import me.realized.de.arenaregen.command.commands.ListCommand;
 import me.realized.de.arenaregen.command.commands.ResetCommand;
+import me.realized.de.arenaregen.command.commands.StatsCommand;
 import me.realized.de.arenaregen.config.Lang;
 import me.realized.de.arenaregen.util.StringUtil;
 import me.realized.duels.api.Duels;
@@ -27,9 +29,11 @@ public class ArenaregenCommand extends SubCommand {
 
         register(
                 new CreateCommand(extension, api),
+                new CopyCommand(extension, api),
                 new DeleteCommand(extension, api),
                 new ResetCommand(extension, api),
-                new ListCommand(extension, api)
+                new ListCommand(extension, api),
+                new StatsCommand(extension, api)
         );
     }
 
@@ -0,0 +1,67 @@
+package me.realized.de.arenaregen.command.commands;
+
+import java.util.OptionalInt;
+import me.realized.de.arenaregen.ArenaRegen;
+import me.realized.de.arenaregen.command.ARCommand;
+import me.realized.de.arenaregen.util.NumberUtil;
+import me.realized.de.arenaregen.zone.ResetZone;
+import me.realized.duels.api.Duels;
+import me.realized.duels.api.arena.Arena;
+import org.apache.commons.lang.StringUtils;
+import org.bukkit.command.CommandSender;
+
+public class CopyCommand extends ARCommand {
+
+    public CopyCommand(final ArenaRegen extension, final Duels api) {
+        super(extension, api, "copy", "copy [template] [x] [y] [z] [arena]", "Creates a reset zone for arena from another zone moved by x, y, z.", 7, false);
+    }
+
+    @Override
+    public void execute(final CommandSender sender, final String label, final String[] args) {
+        final String templateName = args[2];
+
+        if (zoneManager.isLoading(templateName)) {
+            lang.sendMessage(sender, "ERROR.zone-loading", "name", templateName);
+            return;
+        }
+
+        final ResetZone template = zoneManager.get(templateName);
+
+        if (template == null) {
+            lang.sendMessage(sender, "ERROR.zone-not-found", "name", templateName);
+            return;
+        }
+
+        final OptionalInt dx = NumberUtil.parseInt(args[3]), dy = NumberUtil.parseInt(args[4]), dz = NumberUtil.parseInt(args[5]);
+
+        if (!dx.isPresent() || !dy.isPresent() || !dz.isPresent()) {
+            lang.sendMessage(sender, "ERROR.invalid-offset", "x", args[3], "y", args[4], "z", args[5]);
+            return;
+        }
+
+        final String name = StringUtils.join(args, " ", 6, args.length);
+        final Arena arena = arenaManager.get(name);
+
+        if (arena == null) {
+            lang.sendMessage(sender, "ERROR.arena-not-found", "name", name);
+            return;
+        }
+
+        if (arena.isUsed()) {
+            lang.sendMessage(sender, "ERROR.arena-in-use", "name", name);
+            return;
+        }
+
+        if (zoneManager.overlaps(template, dx.getAsInt(), dy.getAsInt(), dz.getAsInt())) {
+            lang.sendMessage(sender, "ERROR.zone-overlap", "x", args[3], "y", args[4], "z", args[5]);
+            return;
+        }
+
+        if (zoneManager.copy(template, arena, dx.getAsInt(), dy.getAsInt(), dz.getAsInt()) == null) {
+            lang.sendMessage(sender, "ERROR.already-exists", "name", name);
+            return;
+        }
+
+        lang.sendMessage(sender, "COMMAND.arenaregen.copy", "name", name, "template", template.getName());
+    }
+}
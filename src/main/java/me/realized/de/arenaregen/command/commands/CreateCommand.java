@@ -33,11 +33,22 @@ public class CreateCommand extends ARCommand {
             return;
         }
 
-        if (!zoneManager.create(arena, selection)) {
+        final boolean created = zoneManager.create(arena, selection,
+            progress -> lang.sendMessage(sender, "COMMAND.arenaregen.create-progress", "name", name, "progress", progress),
+            zone -> {
+                if (zone == null) {
+                    lang.sendMessage(sender, "ERROR.capture-failed", "name", name);
+                    return;
+                }
+
+                lang.sendMessage(sender, "COMMAND.arenaregen.create", "name", name);
+            });
+
+        if (!created) {
             lang.sendMessage(sender, "ERROR.already-exists", "name", name);
             return;
         }
 
-        lang.sendMessage(sender, "COMMAND.arenaregen.create", "name", name);
+        lang.sendMessage(sender, "COMMAND.arenaregen.create-start", "name", name);
     }
 }
\ No newline at end of file
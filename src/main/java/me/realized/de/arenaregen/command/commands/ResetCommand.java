@@ -2,6 +2,7 @@ package me.realized.de.arenaregen.command.commands;
 
 import me.realized.de.arenaregen.ArenaRegen;
 import me.realized.de.arenaregen.command.ARCommand;
+import me.realized.de.arenaregen.zone.ResetPriority;
 import me.realized.de.arenaregen.zone.ResetZone;
 import me.realized.duels.api.Duels;
 import me.realized.duels.api.arena.Arena;
@@ -25,6 +26,11 @@ public class ResetCommand extends ARCommand {
             return;
         }
 
+        if (zoneManager.isLoading(name)) {
+            lang.sendMessage(sender, "ERROR.zone-loading", "name", name);
+            return;
+        }
+
         final ResetZone zone = zoneManager.get(name);
 
         if (zone == null) {
@@ -39,6 +45,6 @@ public class ResetCommand extends ARCommand {
             }
 
             lang.sendMessage(sender, "COMMAND.arenaregen.reset.end", "name", name);
-        });
+        }, true, ResetPriority.MANUAL);
     }
 }
\ No newline at end of file
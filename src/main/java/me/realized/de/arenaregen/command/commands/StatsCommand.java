@@ -0,0 +1,82 @@
+package me.realized.de.arenaregen.command.commands;
+
+import me.realized.de.arenaregen.ArenaRegen;
+import me.realized.de.arenaregen.command.ARCommand;
+import me.realized.de.arenaregen.util.WorkerPool;
+import me.realized.de.arenaregen.zone.ListenerStats;
+import me.realized.de.arenaregen.zone.ResetPriority;
+import me.realized.de.arenaregen.zone.ResetScheduler;
+import me.realized.de.arenaregen.zone.ResetZone;
+import me.realized.de.arenaregen.zone.ZoneStats;
+import me.realized.duels.api.Duels;
+import org.apache.commons.lang.StringUtils;
+import org.bukkit.command.CommandSender;
+
+public class StatsCommand extends ARCommand {
+
+    private final WorkerPool workers;
+    private final ResetScheduler scheduler;
+
+    public StatsCommand(final ArenaRegen extension, final Duels api) {
+        super(extension, api, "stats", "stats [arena]", "Shows reset and listener stats.", 2, false);
+        this.workers = extension.getWorkers();
+        this.scheduler = zoneManager.getScheduler();
+    }
+
+    @Override
+    public void execute(final CommandSender sender, final String label, final String[] args) {
+        if (args.length > getLength()) {
+            final String name = StringUtils.join(args, " ", 2, args.length);
+            final ResetZone zone = zoneManager.get(name);
+
+            if (zone == null) {
+                lang.sendMessage(sender, "ERROR.zone-not-found", "name", name);
+                return;
+            }
+
+            final ZoneStats stats = zone.getStats();
+            final ResetPriority priority = scheduler.getPriority(zone);
+            final long waitTime = scheduler.getWaitTime(zone);
+            lang.sendMessage(sender, "COMMAND.arenaregen.stats.zone",
+                "name", zone.getName(),
+                "resets", stats.getResets(),
+                "aborted", stats.getAbortedResets(),
+                "duration", format(stats.getLastDurationMillis()),
+                "index", format(stats.getLastIndexMillis()),
+                "scanned", stats.getLastScanned(),
+                "changed", stats.getLastChanged(),
+                "ticks", stats.getLastTicks(),
+                "tick", format(stats.getLastTickMillis()),
+                "max_tick", format(stats.getLastMaxTickMillis()),
+                "write", format(stats.getLastWriteMillis()),
+                "light", format(stats.getLastLightMillis()),
+                "chunk_packets", stats.getChunkPackets(),
+                "block_change_packets", stats.getBlockChangePackets(),
+                "kilobytes", stats.getEstimatedBytes() / 1024,
+                "state", zone.getResetState().name().toLowerCase(),
+                "priority", priority != null ? priority.name().toLowerCase() : "none",
+                "wait", waitTime >= 0 ? waitTime : "-");
+            return;
+        }
+
+        lang.sendMessage(sender, "COMMAND.arenaregen.stats.header", "zones_count", zoneManager.getZones().size());
+
+        for (final ListenerStats.Counter counter : zoneManager.getListenerStats().getCounters()) {
+            lang.sendMessage(sender, "COMMAND.arenaregen.stats.listener",
+                "name", counter.getName(), "calls", counter.getCalls(), "total", format(counter.getTotalMillis()), "average", format(counter.getAverageMicros()));
+        }
+
+        lang.sendMessage(sender, "COMMAND.arenaregen.stats.workers",
+            "threads", workers.getSize(),
+            "type", workers.isVirtual() ? "virtual" : "platform",
+            "active", workers.getActiveCount(),
+            "queued", workers.getQueueDepth(),
+            "peak", workers.getPeakQueueDepth(),
+            "completed", workers.getCompletedTasks());
+        lang.sendMessage(sender, "COMMAND.arenaregen.stats.scheduler", "queued", scheduler.getQueueDepth());
+    }
+
+    private static String format(final double value) {
+        return String.format("%.2f", value);
+    }
+}
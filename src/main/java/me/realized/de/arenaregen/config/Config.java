@@ -12,6 +12,14 @@ public class Config {
     @Getter
     private final int blocksPerTick;
     @Getter
+    private final double tickBudget;
+    @Getter
+    private final boolean adaptiveTickBudget;
+    @Getter
+    private final boolean trackChanges;
+    @Getter
+    private final int maxTrackedChanges;
+    @Getter
     private final boolean allowArenaBlockBreak;
     @Getter
     private final boolean removeDroppedItems;
@@ -25,17 +33,33 @@ public class Config {
     private final boolean preventFireSpread;
     @Getter
     private final boolean preventLeafDecay;
+    @Getter
+    private final boolean chunkTickets;
+    @Getter
+    private final int chunkTicketIdleTime;
+    @Getter
+    private final int metricsInterval;
+    @Getter
+    private final int workerThreads;
 
     public Config(final ArenaRegen extension) {
         final FileConfiguration config = extension.getConfig();
         this.selectingTool = Material.getMaterial(config.getString("selecting-tool", "IRON_AXE"));
         this.allowArenaBlockBreak = config.getBoolean("allow-arena-block-break", false);
-        this.blocksPerTick = config.getInt("blocks-per-tick", 25);
+        this.blocksPerTick = config.getInt("blocks-per-tick", 5000);
+        this.tickBudget = config.getDouble("tick-budget", 4.0);
+        this.adaptiveTickBudget = config.getBoolean("adaptive-tick-budget", true);
+        this.trackChanges = config.getBoolean("track-changes", true);
+        this.maxTrackedChanges = config.getInt("max-tracked-changes", 20000);
         this.removeDroppedItems = config.getBoolean("remove-dropped-items", true);
         this.preventBlockBurn = config.getBoolean("prevent-block-burn", true);
         this.preventBlockMelt = config.getBoolean("prevent-block-melt", true);
         this.preventBlockExplode = config.getBoolean("prevent-block-explode", true);
         this.preventFireSpread = config.getBoolean("prevent-fire-spread", true);
         this.preventLeafDecay = config.getBoolean("prevent-leaf-decay", true);
+        this.chunkTickets = config.getBoolean("chunk-tickets", false);
+        this.chunkTicketIdleTime = config.getInt("chunk-ticket-idle-time", 300);
+        this.metricsInterval = config.getInt("metrics-interval", 60);
+        this.workerThreads = config.getInt("worker-threads", 0);
     }
 }
\ No newline at end of file
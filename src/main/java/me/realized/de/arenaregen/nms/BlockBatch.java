@@ -0,0 +1,56 @@
+package me.realized.de.arenaregen.nms;
+
+import java.util.Arrays;
+
+/**
+ * Block writes targeting a single chunk. Positions are chunk-local on the x and z axes and absolute on the y axis. States
+ * are the server's own block states as returned by {@link NMS#resolve(me.realized.de.arenaregen.util.BlockInfo)}. A
+ * batch is meant to be cleared and refilled for every chunk instead of being allocated per chunk.
+ */
+public final class BlockBatch {
+
+    private int[] positions = new int[64];
+    private Object[] states = new Object[64];
+    private int size;
+
+    public void add(final int x, final int y, final int z, final Object state) {
+        if (size == positions.length) {
+            final int capacity = size << 1;
+            positions = Arrays.copyOf(positions, capacity);
+            states = Arrays.copyOf(states, capacity);
+        }
+
+        positions[size] = y << 8 | z << 4 | x;
+        states[size] = state;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getX(final int index) {
+        return positions[index] & 15;
+    }
+
+    public int getY(final int index) {
+        return positions[index] >> 8;
+    }
+
+    public int getZ(final int index) {
+        return positions[index] >> 4 & 15;
+    }
+
+    public Object getState(final int index) {
+        return states[index];
+    }
+
+    public void clear() {
+        Arrays.fill(states, 0, size, null);
+        size = 0;
+    }
+}
@@ -1,56 +1,173 @@
 package me.realized.de.arenaregen.nms;
 
+import it.unimi.dsi.fastutil.shorts.ShortArraySet;
+import it.unimi.dsi.fastutil.shorts.ShortSet;
+import java.lang.reflect.Field;
+import me.realized.de.arenaregen.util.BlockInfo;
+import net.minecraft.server.v1_16_R3.Block;
 import net.minecraft.server.v1_16_R3.BlockPosition;
 import net.minecraft.server.v1_16_R3.Chunk;
+import net.minecraft.server.v1_16_R3.ChunkSection;
+import net.minecraft.server.v1_16_R3.DataPaletteBlock;
+import net.minecraft.server.v1_16_R3.HeightMap;
 import net.minecraft.server.v1_16_R3.IBlockData;
+import net.minecraft.server.v1_16_R3.ITileEntity;
+import net.minecraft.server.v1_16_R3.LightEngine;
 import net.minecraft.server.v1_16_R3.PacketPlayOutMapChunk;
-import net.minecraft.server.v1_16_R3.World;
-import org.bukkit.Material;
-import org.bukkit.block.Block;
-import org.bukkit.block.BlockFace;
+import net.minecraft.server.v1_16_R3.PacketPlayOutMultiBlockChange;
+import net.minecraft.server.v1_16_R3.SectionPosition;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.craftbukkit.v1_16_R3.CraftChunk;
+import org.bukkit.craftbukkit.v1_16_R3.CraftChunkSnapshot;
 import org.bukkit.craftbukkit.v1_16_R3.CraftWorld;
+import org.bukkit.craftbukkit.v1_16_R3.block.data.CraftBlockData;
 import org.bukkit.craftbukkit.v1_16_R3.entity.CraftPlayer;
 import org.bukkit.craftbukkit.v1_16_R3.util.CraftMagicNumbers;
 import org.bukkit.entity.Player;
 
 public class LatestHandler implements NMS {
 
+    // Storage of the sections of a snapshot, read directly to compare sections without going through the API per block
+    private static final Field SNAPSHOT_BLOCK_IDS = getBlockIdsField();
 
     @Override
-    public void sendChunkUpdate(final Player player, final org.bukkit.Chunk chunk) {
-        ((CraftPlayer) player).getHandle().playerConnection.sendPacket(new PacketPlayOutMapChunk(((CraftChunk) chunk).getHandle(), 65535));
+    public Object resolve(final BlockInfo info) {
+        if (info.getBlockData() != null) {
+            try {
+                return ((CraftBlockData) Bukkit.createBlockData(info.getBlockData())).getState();
+            } catch (IllegalArgumentException ignored) {}
+        }
+
+        return CraftMagicNumbers.getBlock(info.getType()).getBlockData();
+    }
+
+    @Override
+    public int getStateId(final Object state) {
+        return Block.getCombinedId((IBlockData) state);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean readStateIds(final ChunkSnapshot snapshot, final int sectionIndex, final int[] ids) {
+        if (SNAPSHOT_BLOCK_IDS == null || !(snapshot instanceof CraftChunkSnapshot)) {
+            return false;
+        }
+
+        final DataPaletteBlock<IBlockData>[] sections;
+
+        try {
+            sections = (DataPaletteBlock<IBlockData>[]) SNAPSHOT_BLOCK_IDS.get(snapshot);
+        } catch (IllegalAccessException ex) {
+            return false;
+        }
+
+        if (sectionIndex < 0 || sectionIndex >= sections.length) {
+            return false;
+        }
+
+        final DataPaletteBlock<IBlockData> section = sections[sectionIndex];
+        IBlockData last = null;
+        int lastId = 0;
+
+        for (int index = 0; index < ids.length; index++) {
+            final IBlockData state = section.a(index & 15, index >> 8, index >> 4 & 15);
+
+            // Runs of the same state are common, which saves most registry lookups
+            if (state != last) {
+                last = state;
+                lastId = Block.getCombinedId(state);
+            }
+
+            ids[index] = lastId;
+        }
+
+        return true;
     }
 
     @Override
-    public void setBlockFast(final Block bukkitBlock, final Material material, final int data) {
-        final int x = bukkitBlock.getX(), y = bukkitBlock.getY(), z = bukkitBlock.getZ();
-        final BlockPosition position = new BlockPosition(x, y, z);
-        final Chunk chunk = ((CraftChunk) bukkitBlock.getChunk()).getHandle();
-        final net.minecraft.server.v1_16_R3.Block block = CraftMagicNumbers.getBlock(material);
-        final IBlockData blockData = block.getBlockData();
-        chunk.setType(position, blockData, true);
-
-        if (bukkitBlock.getType() == Material.AIR || isSurrounded(bukkitBlock)) {
+    public void sendBlockChanges(final Player player, final org.bukkit.Chunk bukkitChunk, final int sectionY, final short[] positions) {
+        if (sectionY < 0 || sectionY > 15) {
             return;
         }
 
-        final World world = ((CraftWorld) bukkitBlock.getWorld()).getHandle();
-        world.getChunkProvider().getLightEngine().a(position);
+        final ChunkSection section = ((CraftChunk) bukkitChunk).getHandle().getSections()[sectionY];
+        final ShortSet packed = new ShortArraySet(positions.length);
+
+        for (final short position : positions) {
+            packed.add((short) ((position & 15) << 8 | (position >> 4 & 15) << 4 | position >> 8 & 15));
+        }
+
+        ((CraftPlayer) player).getHandle().playerConnection.sendPacket(new PacketPlayOutMultiBlockChange(
+            SectionPosition.a(bukkitChunk.getX(), sectionY, bukkitChunk.getZ()), packed, section != Chunk.a ? section : new ChunkSection(sectionY << 4), false));
+    }
+
+    @Override
+    public void sendChunkSections(final Player player, final org.bukkit.Chunk chunk, final int sectionMask) {
+        ((CraftPlayer) player).getHandle().playerConnection.sendPacket(new PacketPlayOutMapChunk(((CraftChunk) chunk).getHandle(), sectionMask & 65535));
+    }
+
+    @Override
+    public void setBlocks(final org.bukkit.Chunk bukkitChunk, final BlockBatch batch) {
+        final Chunk chunk = ((CraftChunk) bukkitChunk).getHandle();
+        final ChunkSection[] sections = chunk.getSections();
+        final int baseX = bukkitChunk.getX() << 4, baseZ = bukkitChunk.getZ() << 4;
+
+        for (int i = 0; i < batch.size(); i++) {
+            final int x = batch.getX(i), y = batch.getY(i), z = batch.getZ(i);
+
+            if (y < 0 || y > 255) {
+                continue;
+            }
+
+            final IBlockData blockData = (IBlockData) batch.getState(i);
+            final ChunkSection section = sections[y >> 4];
+
+            if (section == Chunk.a) {
+                if (blockData.isAir()) {
+                    continue;
+                }
+
+                // Let the chunk create the section so that the light engine is told about it
+                chunk.setType(new BlockPosition(baseX + x, y, baseZ + z), blockData, false);
+            } else {
+                final IBlockData previous = section.getType(x, y & 15, z);
+
+                if (previous == blockData) {
+                    continue;
+                }
+
+                if (previous.getBlock() instanceof ITileEntity || blockData.getBlock() instanceof ITileEntity) {
+                    // Tile entities have to be removed or created along with their block
+                    chunk.setType(new BlockPosition(baseX + x, y, baseZ + z), blockData, false);
+                } else {
+                    section.setType(x, y & 15, z, blockData, false);
+                }
+            }
+        }
+
+        HeightMap.a(chunk, chunk.heightMap.keySet());
+        chunk.setNeedsSaving(true);
     }
 
-    private boolean isSurrounded(final Block block) {
-        final Block east = block.getRelative(BlockFace.EAST);
-        final Block west = block.getRelative(BlockFace.WEST);
-        final Block south = block.getRelative(BlockFace.SOUTH);
-        final Block north = block.getRelative(BlockFace.NORTH);
-        final Block up = block.getRelative(BlockFace.UP);
-        final Block down = block.getRelative(BlockFace.DOWN);
-        return !east.getType().isTransparent()
-                && !west.getType().isTransparent()
-                && !up.getType().isTransparent()
-                && !down.getType().isTransparent()
-                && !south.getType().isTransparent()
-                && !north.getType().isTransparent();
+    @Override
+    public void relight(final org.bukkit.Chunk bukkitChunk, final BlockBatch batch) {
+        final LightEngine lightEngine = ((CraftWorld) bukkitChunk.getWorld()).getHandle().getChunkProvider().getLightEngine();
+        final int baseX = bukkitChunk.getX() << 4, baseZ = bukkitChunk.getZ() << 4;
+
+        // The checks are only queued here and processed by the light engine at the end of the tick
+        for (int i = 0; i < batch.size(); i++) {
+            lightEngine.a(new BlockPosition(baseX + batch.getX(i), batch.getY(i), baseZ + batch.getZ(i)));
+        }
+    }
+
+    private static Field getBlockIdsField() {
+        try {
+            final Field field = CraftChunkSnapshot.class.getDeclaredField("blockids");
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | SecurityException ex) {
+            return null;
+        }
     }
 }
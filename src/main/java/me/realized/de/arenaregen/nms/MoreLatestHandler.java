@@ -1,56 +1,178 @@
 package me.realized.de.arenaregen.nms;
 
+import it.unimi.dsi.fastutil.shorts.ShortArraySet;
+import it.unimi.dsi.fastutil.shorts.ShortSet;
+import java.lang.reflect.Field;
+import me.realized.de.arenaregen.util.BlockInfo;
 import net.minecraft.core.BlockPosition;
+import net.minecraft.core.SectionPosition;
 import net.minecraft.network.protocol.game.PacketPlayOutMapChunk;
-import net.minecraft.world.level.World;
+import net.minecraft.network.protocol.game.PacketPlayOutMultiBlockChange;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.ITileEntity;
 import net.minecraft.world.level.block.state.IBlockData;
 import net.minecraft.world.level.chunk.Chunk;
-import org.bukkit.Material;
-import org.bukkit.block.Block;
-import org.bukkit.block.BlockFace;
+import net.minecraft.world.level.chunk.ChunkSection;
+import net.minecraft.world.level.chunk.DataPaletteBlock;
+import net.minecraft.world.level.levelgen.HeightMap;
+import net.minecraft.world.level.lighting.LightEngine;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.craftbukkit.v1_17_R1.CraftChunk;
+import org.bukkit.craftbukkit.v1_17_R1.CraftChunkSnapshot;
 import org.bukkit.craftbukkit.v1_17_R1.CraftWorld;
+import org.bukkit.craftbukkit.v1_17_R1.block.data.CraftBlockData;
 import org.bukkit.craftbukkit.v1_17_R1.entity.CraftPlayer;
 import org.bukkit.craftbukkit.v1_17_R1.util.CraftMagicNumbers;
 import org.bukkit.entity.Player;
 
 public class MoreLatestHandler implements NMS {
 
+    // Storage of the sections of a snapshot, read directly to compare sections without going through the API per block
+    private static final Field SNAPSHOT_BLOCK_IDS = getBlockIdsField();
 
     @Override
-    public void sendChunkUpdate(final Player player, final org.bukkit.Chunk chunk) {
-        ((CraftPlayer) player).getHandle().b.sendPacket(new PacketPlayOutMapChunk(((CraftChunk) chunk).getHandle()));
+    public Object resolve(final BlockInfo info) {
+        if (info.getBlockData() != null) {
+            try {
+                return ((CraftBlockData) Bukkit.createBlockData(info.getBlockData())).getState();
+            } catch (IllegalArgumentException ignored) {}
+        }
+
+        return CraftMagicNumbers.getBlock(info.getType()).getBlockData();
+    }
+
+    @Override
+    public int getStateId(final Object state) {
+        return Block.getCombinedId((IBlockData) state);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean readStateIds(final ChunkSnapshot snapshot, final int sectionIndex, final int[] ids) {
+        if (SNAPSHOT_BLOCK_IDS == null || !(snapshot instanceof CraftChunkSnapshot)) {
+            return false;
+        }
+
+        final DataPaletteBlock<IBlockData>[] sections;
+
+        try {
+            sections = (DataPaletteBlock<IBlockData>[]) SNAPSHOT_BLOCK_IDS.get(snapshot);
+        } catch (IllegalAccessException ex) {
+            return false;
+        }
+
+        if (sectionIndex < 0 || sectionIndex >= sections.length) {
+            return false;
+        }
+
+        final DataPaletteBlock<IBlockData> section = sections[sectionIndex];
+        IBlockData last = null;
+        int lastId = 0;
+
+        for (int index = 0; index < ids.length; index++) {
+            final IBlockData state = section.a(index & 15, index >> 8, index >> 4 & 15);
+
+            // Runs of the same state are common, which saves most registry lookups
+            if (state != last) {
+                last = state;
+                lastId = Block.getCombinedId(state);
+            }
+
+            ids[index] = lastId;
+        }
+
+        return true;
     }
 
     @Override
-    public void setBlockFast(final Block bukkitBlock, final Material material, final int data) {
-        final int x = bukkitBlock.getX(), y = bukkitBlock.getY(), z = bukkitBlock.getZ();
-        final BlockPosition position = new BlockPosition(x, y, z);
-        final Chunk chunk = ((CraftChunk) bukkitBlock.getChunk()).getHandle();
-        final net.minecraft.world.level.block.Block block = CraftMagicNumbers.getBlock(material);
-        final IBlockData blockData = block.getBlockData();
-        chunk.setType(position, blockData, true);
-
-        if (bukkitBlock.getType() == Material.AIR || isSurrounded(bukkitBlock)) {
+    public void sendBlockChanges(final Player player, final org.bukkit.Chunk bukkitChunk, final int sectionY, final short[] positions) {
+        final ChunkSection[] sections = ((CraftChunk) bukkitChunk).getHandle().getSections();
+        final int index = sectionY - (bukkitChunk.getWorld().getMinHeight() >> 4);
+
+        if (index < 0 || index >= sections.length) {
             return;
         }
 
-        final World world = ((CraftWorld) bukkitBlock.getWorld()).getHandle();
-        world.getChunkProvider().getLightEngine().a(position);
+        final ShortSet packed = new ShortArraySet(positions.length);
+
+        for (final short position : positions) {
+            packed.add((short) ((position & 15) << 8 | (position >> 4 & 15) << 4 | position >> 8 & 15));
+        }
+
+        ((CraftPlayer) player).getHandle().b.sendPacket(new PacketPlayOutMultiBlockChange(SectionPosition.a(bukkitChunk.getX(), sectionY, bukkitChunk.getZ()),
+            packed, sections[index] != Chunk.a ? sections[index] : new ChunkSection(sectionY), false));
+    }
+
+    // The 1.17 chunk packet always carries every section, so the mask is not used.
+    @Override
+    public void sendChunkSections(final Player player, final org.bukkit.Chunk chunk, final int sectionMask) {
+        ((CraftPlayer) player).getHandle().b.sendPacket(new PacketPlayOutMapChunk(((CraftChunk) chunk).getHandle()));
     }
 
-    private boolean isSurrounded(final Block block) {
-        final Block east = block.getRelative(BlockFace.EAST);
-        final Block west = block.getRelative(BlockFace.WEST);
-        final Block south = block.getRelative(BlockFace.SOUTH);
-        final Block north = block.getRelative(BlockFace.NORTH);
-        final Block up = block.getRelative(BlockFace.UP);
-        final Block down = block.getRelative(BlockFace.DOWN);
-        return !east.getType().isTransparent()
-                && !west.getType().isTransparent()
-                && !up.getType().isTransparent()
-                && !down.getType().isTransparent()
-                && !south.getType().isTransparent()
-                && !north.getType().isTransparent();
+    @Override
+    public void setBlocks(final org.bukkit.Chunk bukkitChunk, final BlockBatch batch) {
+        final Chunk chunk = ((CraftChunk) bukkitChunk).getHandle();
+        final ChunkSection[] sections = chunk.getSections();
+        final int baseX = bukkitChunk.getX() << 4, baseZ = bukkitChunk.getZ() << 4;
+        final int minY = bukkitChunk.getWorld().getMinHeight(), maxY = bukkitChunk.getWorld().getMaxHeight();
+        final int minSection = minY >> 4;
+
+        for (int i = 0; i < batch.size(); i++) {
+            final int x = batch.getX(i), y = batch.getY(i), z = batch.getZ(i);
+
+            if (y < minY || y >= maxY) {
+                continue;
+            }
+
+            final IBlockData blockData = (IBlockData) batch.getState(i);
+            final ChunkSection section = sections[(y >> 4) - minSection];
+
+            if (section == Chunk.a) {
+                if (blockData.isAir()) {
+                    continue;
+                }
+
+                // Let the chunk create the section so that the light engine is told about it
+                chunk.setType(new BlockPosition(baseX + x, y, baseZ + z), blockData, false);
+            } else {
+                final IBlockData previous = section.getType(x, y & 15, z);
+
+                if (previous == blockData) {
+                    continue;
+                }
+
+                if (previous.getBlock() instanceof ITileEntity || blockData.getBlock() instanceof ITileEntity) {
+                    // Tile entities have to be removed or created along with their block
+                    chunk.setType(new BlockPosition(baseX + x, y, baseZ + z), blockData, false);
+                } else {
+                    section.setType(x, y & 15, z, blockData, false);
+                }
+            }
+        }
+
+        HeightMap.a(chunk, chunk.heightMap.keySet());
+        chunk.setNeedsSaving(true);
+    }
+
+    @Override
+    public void relight(final org.bukkit.Chunk bukkitChunk, final BlockBatch batch) {
+        final LightEngine lightEngine = ((CraftWorld) bukkitChunk.getWorld()).getHandle().getChunkProvider().getLightEngine();
+        final int baseX = bukkitChunk.getX() << 4, baseZ = bukkitChunk.getZ() << 4;
+
+        // The checks are only queued here and processed by the light engine at the end of the tick
+        for (int i = 0; i < batch.size(); i++) {
+            lightEngine.a(new BlockPosition(baseX + batch.getX(i), batch.getY(i), baseZ + batch.getZ(i)));
+        }
+    }
+
+    private static Field getBlockIdsField() {
+        try {
+            final Field field = CraftChunkSnapshot.class.getDeclaredField("blockids");
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | SecurityException ex) {
+            return null;
+        }
     }
 }
@@ -1,14 +1,59 @@
 package me.realized.de.arenaregen.nms;
 
+import me.realized.de.arenaregen.util.BlockInfo;
 import org.bukkit.Chunk;
-import org.bukkit.Material;
-import org.bukkit.block.Block;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.entity.Player;
 
 public interface NMS {
 
-    void sendChunkUpdate(final Player player, final Chunk chunk);
+    /**
+     * Resolves the block to the server's own block state object, which is what {@link BlockBatch} holds. Resolving is
+     * meant to happen once per palette entry when a zone is loaded, so that writes do not look anything up per block.
+     * Full block data is used where the server supports it. Invalid block data resolves to the type's default state.
+     */
+    Object resolve(final BlockInfo info);
 
-    void setBlockFast(final Block bukkitBlock, final Material material, final int data);
+    /**
+     * @return The server's global id of a state returned by {@link #resolve(BlockInfo)}, which is the same for equal
+     * states. Ids are only stable while the server is running.
+     */
+    int getStateId(final Object state);
+
+    /**
+     * Reads the ids of the states of every position in one section of the snapshot straight from its storage, without
+     * going through the API for each block.
+     *
+     * @param sectionIndex Index of the section in the snapshot, counted from the bottom of the world.
+     * @param ids Receives the {@link #getStateId(Object) state id} of each position, packed as y << 8 | z << 4 | x.
+     * @return false if the storage of the snapshot cannot be read on this server, in which case ids is left untouched.
+     */
+    boolean readStateIds(final ChunkSnapshot snapshot, final int sectionIndex, final int[] ids);
+
+    /**
+     * Sends the current state of the given positions in one section of the chunk.
+     *
+     * @param sectionY Section index, equal to the y coordinate shifted right by 4.
+     * @param positions Section-local positions packed as y << 8 | z << 4 | x.
+     */
+    void sendBlockChanges(final Player player, final Chunk chunk, final int sectionY, final short[] positions);
+
+    /**
+     * Sends the sections of the chunk set in the mask, where bit i stands for the section at index i. A mask of -1
+     * sends the whole chunk. Versions that cannot send single sections send the whole chunk for any mask.
+     */
+    void sendChunkSections(final Player player, final Chunk chunk, final int sectionMask);
+
+    /**
+     * Applies every write in the batch to the given chunk. Chunk-wide state such as heightmaps is updated once per
+     * batch instead of once per block. Light is left untouched, see {@link #relight(Chunk, BlockBatch)}.
+     */
+    void setBlocks(final Chunk chunk, final BlockBatch batch);
+
+    /**
+     * Updates light around the positions in the batch. Meant to be called once all writes of a reset are done, so that
+     * every position is only relit once.
+     */
+    void relight(final Chunk chunk, final BlockBatch batch);
 
 }
\ No newline at end of file
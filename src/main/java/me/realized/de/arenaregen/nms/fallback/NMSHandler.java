@@ -4,14 +4,17 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import me.realized.de.arenaregen.nms.BlockBatch;
 import me.realized.de.arenaregen.nms.NMS;
+import me.realized.de.arenaregen.util.BlockInfo;
 import me.realized.de.arenaregen.util.CompatUtil;
 import me.realized.de.arenaregen.util.ReflectionUtil;
+import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Material;
-import org.bukkit.World;
-import org.bukkit.block.Block;
-import org.bukkit.block.BlockFace;
 import org.bukkit.entity.Player;
 
 public class NMSHandler implements NMS {
@@ -25,9 +28,22 @@ public class NMSHandler implements NMS {
     private Method BLOCK_FROM_LEGACY_DATA;
     private Method BLOCK_GET_DATA;
     private Method MAGIC_GET_BLOCK;
+    private Method BLOCK_DATA_GET_STATE;
     private Method CHUNK_SET_BLOCK_12;
     private Method CHUNK_SET_BLOCK;
 
+    // Only used for writes into sections, which are enabled if every one of these was found
+    private Method CHUNK_GET_SECTIONS;
+    private Method SECTION_GET_TYPE;
+    private Method SECTION_SET_TYPE;
+    private Method BLOCK_DATA_GET_BLOCK;
+    private Method BLOCK_DATA_IS_AIR;
+    private Class<?> TILE_ENTITY_BLOCK;
+    private Field CHUNK_HEIGHT_MAP;
+    private Method HEIGHT_MAP_UPDATE;
+    private Method CHUNK_SET_NEEDS_SAVING;
+    private boolean sectionWrites;
+
     private Method GET_CHUNK_PROVIDER;
     private Method GET_LIGHT_ENGINE;
     private Method LIGHT_ENGINE_A;
@@ -37,6 +53,7 @@ public class NMSHandler implements NMS {
     private Method SEND_PACKET;
 
     private Constructor<?> PACKET_MAP_CHUNK_CONSTRUCTOR;
+    private Constructor<?> PACKET_MULTI_BLOCK_CHANGE_CONSTRUCTOR;
 
     public NMSHandler() {
         try {
@@ -62,6 +79,7 @@ public class NMSHandler implements NMS {
             BLOCK_FROM_LEGACY_DATA = ReflectionUtil.getMethod(BLOCK, "fromLegacyData", Integer.TYPE);
             BLOCK_GET_DATA = ReflectionUtil.getMethod(BLOCK, "getBlockData");
             MAGIC_GET_BLOCK = ReflectionUtil.getMethod(ReflectionUtil.getCBClass("util.CraftMagicNumbers"), "getBlock", Material.class);
+            BLOCK_DATA_GET_STATE = ReflectionUtil.getMethod(ReflectionUtil.getCBClass("block.data.CraftBlockData"), "getState");
             final Class<?> CHUNK = ReflectionUtil.getNMSClass("Chunk");
             final Class<?> BLOCK_DATA = ReflectionUtil.getNMSClass("IBlockData");
             CHUNK_SET_BLOCK_12 = ReflectionUtil.getMethod(CHUNK, "a", BLOCK_POS, BLOCK_DATA);
@@ -71,6 +89,22 @@ public class NMSHandler implements NMS {
                 CHUNK_SET_BLOCK = ReflectionUtil.getMethod(CHUNK, "setType", BLOCK_POS, BLOCK_DATA, Boolean.TYPE);
             }
 
+            if (!CompatUtil.isPre1_14()) {
+                final Class<?> CHUNK_SECTION = ReflectionUtil.getNMSClass("ChunkSection");
+                CHUNK_GET_SECTIONS = ReflectionUtil.getMethod(CHUNK, "getSections");
+                SECTION_GET_TYPE = ReflectionUtil.getMethod(CHUNK_SECTION, "getType", Integer.TYPE, Integer.TYPE, Integer.TYPE);
+                SECTION_SET_TYPE = ReflectionUtil.getMethod(CHUNK_SECTION, "setType", Integer.TYPE, Integer.TYPE, Integer.TYPE, BLOCK_DATA, Boolean.TYPE);
+                BLOCK_DATA_GET_BLOCK = ReflectionUtil.getMethod(BLOCK_DATA, "getBlock");
+                BLOCK_DATA_IS_AIR = ReflectionUtil.getMethod(BLOCK_DATA, "isAir");
+                TILE_ENTITY_BLOCK = ReflectionUtil.getNMSClass("ITileEntity");
+                CHUNK_HEIGHT_MAP = ReflectionUtil.getField(CHUNK, "heightMap");
+                HEIGHT_MAP_UPDATE = ReflectionUtil.getMethod(ReflectionUtil.getNMSClass("HeightMap"), "a", ReflectionUtil.getNMSClass("IChunkAccess"), Set.class);
+                CHUNK_SET_NEEDS_SAVING = ReflectionUtil.getMethod(CHUNK, "setNeedsSaving", Boolean.TYPE);
+                sectionWrites = CHUNK_GET_SECTIONS != null && SECTION_GET_TYPE != null && SECTION_SET_TYPE != null && BLOCK_DATA_GET_BLOCK != null
+                    && BLOCK_DATA_IS_AIR != null && TILE_ENTITY_BLOCK != null && CHUNK_HEIGHT_MAP != null && HEIGHT_MAP_UPDATE != null
+                    && CHUNK_SET_NEEDS_SAVING != null && CHUNK_SET_BLOCK != null;
+            }
+
             final Class<?> CB_PLAYER = ReflectionUtil.getCBClass("entity.CraftPlayer");
             GET_HANDLE = ReflectionUtil.getMethod(CB_PLAYER, "getHandle");
 
@@ -84,80 +118,179 @@ public class NMSHandler implements NMS {
             if (PACKET_MAP_CHUNK_CONSTRUCTOR == null) {
                 PACKET_MAP_CHUNK_CONSTRUCTOR = ReflectionUtil.getConstructor(PACKET_MAP_CHUNK, CHUNK, int.class);
             }
+
+            PACKET_MULTI_BLOCK_CHANGE_CONSTRUCTOR = ReflectionUtil.getConstructor(ReflectionUtil.getNMSClass("PacketPlayOutMultiBlockChange"),
+                int.class, short[].class, CHUNK);
         } catch (Throwable ex) {
             ex.printStackTrace();
         }
     }
 
     @Override
-    public void sendChunkUpdate(final Player player, final Chunk chunk) {
+    public Object resolve(final BlockInfo info) {
+        try {
+            if (info.getBlockData() != null && BLOCK_DATA_GET_STATE != null) {
+                try {
+                    return BLOCK_DATA_GET_STATE.invoke(Bukkit.createBlockData(info.getBlockData()));
+                } catch (IllegalArgumentException ignored) {}
+            }
+
+            final Object nmsBlock = MAGIC_GET_BLOCK.invoke(null, info.getType());
+            return CompatUtil.isPre1_13() ? BLOCK_FROM_LEGACY_DATA.invoke(nmsBlock, (int) info.getData()) : BLOCK_GET_DATA.invoke(nmsBlock);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new RuntimeException("Could not resolve " + info, ex);
+        }
+    }
+
+    @Override
+    public int getStateId(final Object state) {
+        // Ids are only compared against ids read from snapshots, which are not read on these versions
+        return 0;
+    }
+
+    @Override
+    public boolean readStateIds(final ChunkSnapshot snapshot, final int sectionIndex, final int[] ids) {
+        return false;
+    }
+
+    @Override
+    public void sendBlockChanges(final Player player, final Chunk chunk, final int sectionY, final short[] positions) {
+        if (sectionY < 0 || sectionY > 15) {
+            return;
+        }
+
+        if (PACKET_MULTI_BLOCK_CHANGE_CONSTRUCTOR == null) {
+            sendChunkSections(player, chunk, 1 << sectionY);
+            return;
+        }
+
+        // The packet takes positions packed as x << 12 | z << 8 | y, with y relative to the chunk
+        final short[] packed = new short[positions.length];
+
+        for (int i = 0; i < positions.length; i++) {
+            final int position = positions[i];
+            packed[i] = (short) ((position & 15) << 12 | (position >> 4 & 15) << 8 | sectionY << 4 | position >> 8 & 15);
+        }
+
+        try {
+            final Object connection = PLAYER_CONNECTION.get(GET_HANDLE.invoke(player));
+            SEND_PACKET.invoke(connection, PACKET_MULTI_BLOCK_CHANGE_CONSTRUCTOR.newInstance(packed.length, packed, CHUNK_GET_HANDLE.invoke(chunk)));
+        } catch (IllegalAccessException | InvocationTargetException | InstantiationException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    @Override
+    public void sendChunkSections(final Player player, final Chunk chunk, final int sectionMask) {
+        final int mask = sectionMask & 65535;
+
         try {
             final Object chunkHandle = CHUNK_GET_HANDLE.invoke(chunk);
             final Object connection = PLAYER_CONNECTION.get(GET_HANDLE.invoke(player));
 
             if (CompatUtil.isPre1_12()) {
-                SEND_PACKET.invoke(connection, PACKET_MAP_CHUNK_CONSTRUCTOR.newInstance(chunkHandle, true, 65535));
+                // Only a full chunk packet may also carry the biomes, partial ones are applied on top of the client's chunk
+                SEND_PACKET.invoke(connection, PACKET_MAP_CHUNK_CONSTRUCTOR.newInstance(chunkHandle, mask == 65535, mask));
             } else {
-                SEND_PACKET.invoke(connection, PACKET_MAP_CHUNK_CONSTRUCTOR.newInstance(chunkHandle, 65535));
+                SEND_PACKET.invoke(connection, PACKET_MAP_CHUNK_CONSTRUCTOR.newInstance(chunkHandle, mask));
             }
         } catch (IllegalAccessException | InvocationTargetException | InstantiationException ex) {
             ex.printStackTrace();
         }
     }
 
+    // Blocks are written into the chunk's sections where their methods were found. Section internals differ too much
+    // before 1.14, so writes there go through the chunk's own setter. The chunk handle is only looked up once per batch.
     @Override
-    public void setBlockFast(final Block block, final Material material, final int data) {
-        final Chunk chunk = block.getChunk();
-        final int x = block.getX();
-        final int y = block.getY();
-        final int z = block.getZ();
+    public void setBlocks(final Chunk chunk, final BlockBatch batch) {
+        final int baseX = chunk.getX() << 4, baseZ = chunk.getZ() << 4;
 
         try {
             final Object chunkHandle = CHUNK_GET_HANDLE.invoke(chunk);
-            Object nmsBlock = MAGIC_GET_BLOCK.invoke(null, material);
 
-            final Object blockPos = BLOCK_POS_CONSTRUCTOR.newInstance(x, y, z);
+            if (sectionWrites) {
+                setSectionBlocks(chunkHandle, baseX, baseZ, batch);
+                return;
+            }
 
-            if (CompatUtil.isPre1_13()) {
-                nmsBlock = BLOCK_FROM_LEGACY_DATA.invoke(nmsBlock, data);
-                CHUNK_SET_BLOCK_12.invoke(chunkHandle, blockPos, nmsBlock);
-            } else {
-                CHUNK_SET_BLOCK.invoke(chunkHandle, blockPos, BLOCK_GET_DATA.invoke(nmsBlock), true);
+            for (int i = 0; i < batch.size(); i++) {
+                final Object blockData = batch.getState(i);
+                final Object blockPos = BLOCK_POS_CONSTRUCTOR.newInstance(baseX + batch.getX(i), batch.getY(i), baseZ + batch.getZ(i));
+
+                if (CompatUtil.isPre1_13()) {
+                    CHUNK_SET_BLOCK_12.invoke(chunkHandle, blockPos, blockData);
+                } else {
+                    CHUNK_SET_BLOCK.invoke(chunkHandle, blockPos, blockData, true);
+                }
             }
+        } catch (Throwable ex) {
+            ex.printStackTrace();
+        }
+    }
 
-            if (block.getType() == Material.AIR || isSurrounded(block.getWorld(), x, y, z)) {
-                return;
+    // Same as the latest handler's writes, through reflection.
+    private void setSectionBlocks(final Object chunkHandle, final int baseX, final int baseZ, final BlockBatch batch) throws ReflectiveOperationException {
+        final Object[] sections = (Object[]) CHUNK_GET_SECTIONS.invoke(chunkHandle);
+
+        for (int i = 0; i < batch.size(); i++) {
+            final int x = batch.getX(i), y = batch.getY(i), z = batch.getZ(i);
+
+            if (y < 0 || y > 255) {
+                continue;
+            }
+
+            final Object blockData = batch.getState(i);
+            final Object section = sections[y >> 4];
+
+            if (section == null) {
+                if ((boolean) BLOCK_DATA_IS_AIR.invoke(blockData)) {
+                    continue;
+                }
+
+                // Let the chunk create the section so that the light engine is told about it
+                CHUNK_SET_BLOCK.invoke(chunkHandle, BLOCK_POS_CONSTRUCTOR.newInstance(baseX + x, y, baseZ + z), blockData, true);
+                continue;
             }
 
-            final Object worldHandle = WORLD_GET_HANDLE.invoke(block.getWorld());
+            final Object previous = SECTION_GET_TYPE.invoke(section, x, y & 15, z);
 
-            if (CompatUtil.isPre1_14()) {
-                if (CompatUtil.isPaper() && WORLD_UPDATE_LIGHTING != null) {
+            if (previous == blockData) {
+                continue;
+            }
+
+            if (TILE_ENTITY_BLOCK.isInstance(BLOCK_DATA_GET_BLOCK.invoke(previous)) || TILE_ENTITY_BLOCK.isInstance(BLOCK_DATA_GET_BLOCK.invoke(blockData))) {
+                // Tile entities have to be removed or created along with their block
+                CHUNK_SET_BLOCK.invoke(chunkHandle, BLOCK_POS_CONSTRUCTOR.newInstance(baseX + x, y, baseZ + z), blockData, true);
+            } else {
+                SECTION_SET_TYPE.invoke(section, x, y & 15, z, blockData, false);
+            }
+        }
+
+        HEIGHT_MAP_UPDATE.invoke(null, chunkHandle, ((Map<?, ?>) CHUNK_HEIGHT_MAP.get(chunkHandle)).keySet());
+        CHUNK_SET_NEEDS_SAVING.invoke(chunkHandle, true);
+    }
+
+    @Override
+    public void relight(final Chunk chunk, final BlockBatch batch) {
+        final int baseX = chunk.getX() << 4, baseZ = chunk.getZ() << 4;
+
+        try {
+            final Object worldHandle = WORLD_GET_HANDLE.invoke(chunk.getWorld());
+            final Object lightEngine = CompatUtil.isPre1_14() ? null : GET_LIGHT_ENGINE.invoke(GET_CHUNK_PROVIDER.invoke(worldHandle));
+
+            for (int i = 0; i < batch.size(); i++) {
+                final Object blockPos = BLOCK_POS_CONSTRUCTOR.newInstance(baseX + batch.getX(i), batch.getY(i), baseZ + batch.getZ(i));
+
+                if (lightEngine != null) {
+                    LIGHT_ENGINE_A.invoke(lightEngine, blockPos);
+                } else if (CompatUtil.isPaper() && WORLD_UPDATE_LIGHTING != null) {
                     WORLD_UPDATE_LIGHTING.invoke(worldHandle, BLOCK_ENUM, blockPos);
                 } else {
                     WORLD_C.invoke(worldHandle, BLOCK_ENUM, blockPos);
                 }
-            } else {
-                LIGHT_ENGINE_A.invoke(GET_LIGHT_ENGINE.invoke(GET_CHUNK_PROVIDER.invoke(worldHandle)), blockPos);
             }
         } catch (Throwable ex) {
             ex.printStackTrace();
         }
     }
-
-    private static boolean isSurrounded(final World world, final int x, final int y, final int z) {
-        final Block base = world.getBlockAt(x, y, z);
-        final Block east = base.getRelative(BlockFace.EAST);
-        final Block west = base.getRelative(BlockFace.WEST);
-        final Block south = base.getRelative(BlockFace.SOUTH);
-        final Block north = base.getRelative(BlockFace.NORTH);
-        final Block up = base.getRelative(BlockFace.UP);
-        final Block down = base.getRelative(BlockFace.DOWN);
-        return !east.getType().isTransparent()
-                && !west.getType().isTransparent()
-                && !up.getType().isTransparent()
-                && !down.getType().isTransparent()
-                && !south.getType().isTransparent()
-                && !north.getType().isTransparent();
-    }
-}
\ No newline at end of file
+}
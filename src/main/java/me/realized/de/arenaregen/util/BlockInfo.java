@@ -1,9 +1,13 @@
 package me.realized.de.arenaregen.util;
 
+import java.util.Objects;
 import lombok.Getter;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
 
 public class BlockInfo {
 
@@ -11,10 +15,21 @@ public class BlockInfo {
     private final Material type;
     @Getter
     private final byte data;
+    // Full block state on 1.13+ such as "minecraft:oak_stairs[facing=east,half=top]", or null to use the default state of
+    // the type. Held as a string so that the class still loads on versions without block data.
+    @Getter
+    private final String blockData;
+    // Parsed from blockData by parse(), typed as Object for the same reason
+    private volatile Object parsed;
 
-    public BlockInfo(final Material type, final byte data) {
+    public BlockInfo(final Material type, final byte data, final String blockData) {
         this.type = type;
         this.data = data;
+        this.blockData = blockData;
+    }
+
+    public BlockInfo(final Material type, final byte data) {
+        this(type, data, null);
     }
 
     public BlockInfo() {
@@ -23,15 +38,93 @@ public class BlockInfo {
 
     @SuppressWarnings("deprecation")
     public BlockInfo(final BlockState state) {
-        this(state.getType(), state.getRawData());
+        this(state.getType(), state.getRawData(), CompatUtil.isPre1_13() ? null : state.getBlockData().getAsString());
+    }
+
+    /**
+     * @return The block at the given position of the snapshot, with its full block state on 1.13+.
+     */
+    @SuppressWarnings("deprecation")
+    public static BlockInfo of(final ChunkSnapshot snapshot, final int x, final int y, final int z) {
+        final Material type = snapshot.getBlockType(x, y, z);
+
+        if (type == Material.AIR) {
+            return new BlockInfo();
+        }
+
+        return new BlockInfo(type, (byte) snapshot.getData(x, y, z), CompatUtil.isPre1_13() ? null : snapshot.getBlockData(x, y, z).getAsString());
     }
 
+    @SuppressWarnings("deprecation")
     public boolean matches(final Block block) {
+        if (blockData != null) {
+            return block.getBlockData().equals(getParsed());
+        }
+
         return block.getType() == type && block.getData() == data;
     }
 
+    @SuppressWarnings("deprecation")
+    public boolean matches(final ChunkSnapshot snapshot, final int x, final int y, final int z) {
+        if (blockData != null) {
+            // Block data compares the server's own state objects, which is no more work than looking up the legacy data
+            return snapshot.getBlockData(x, y, z).equals(getParsed());
+        }
+
+        return snapshot.getBlockType(x, y, z) == type && snapshot.getData(x, y, z) == data;
+    }
+
+    /**
+     * @return true if the block is stored with its full state, so that comparing the server's states gives the same
+     * result as {@link #matches(ChunkSnapshot, int, int, int)}. Not the case for blocks stored without their block
+     * data, other than air.
+     */
+    public boolean hasFullState() {
+        return blockData != null || type == Material.AIR;
+    }
+
+    /**
+     * Parses the block data ahead of the comparisons. Meant to be called on the main thread when the zone is loaded:
+     * comparisons also run on worker threads, and Bukkit does not make parsing block data safe off the main thread.
+     */
+    public void parse() {
+        if (blockData != null) {
+            getParsed();
+        }
+    }
+
+    private BlockData getParsed() {
+        Object result = parsed;
+
+        if (result == null) {
+            try {
+                result = Bukkit.createBlockData(blockData);
+            } catch (IllegalArgumentException ex) {
+                // Block data written by a newer version than the server's, use the default state of the type
+                result = Bukkit.createBlockData(type);
+            }
+
+            parsed = result;
+        }
+
+        return (BlockData) result;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) { return true; }
+        if (other == null || getClass() != other.getClass()) { return false; }
+        final BlockInfo info = (BlockInfo) other;
+        return data == info.data && type == info.type && Objects.equals(blockData, info.blockData);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, data, blockData);
+    }
+
     @Override
     public String toString() {
         return type + ";" + data;
     }
-}
\ No newline at end of file
+}
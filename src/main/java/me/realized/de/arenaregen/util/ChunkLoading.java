@@ -0,0 +1,69 @@
+package me.realized.de.arenaregen.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Loads chunks without blocking the main thread where the server allows it, and pins them with plugin chunk tickets.
+ */
+public final class ChunkLoading {
+
+    // Paper 1.13+
+    private static final Method GET_CHUNK_AT_ASYNC = ReflectionUtil.getMethod(World.class, "getChunkAtAsync", Integer.TYPE, Integer.TYPE);
+
+    private ChunkLoading() {}
+
+    /**
+     * Requests the chunks that are not loaded yet.
+     *
+     * @param chunks Chunk coordinates as (x, z) pairs.
+     * @return A future completed on the main thread once every chunk is loaded. Completed right away on servers that can
+     * only load chunks synchronously, which leaves loading to the first access.
+     */
+    public static CompletableFuture<Void> loadAsync(final World world, final int[] chunks) {
+        if (GET_CHUNK_AT_ASYNC == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final List<CompletableFuture<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < chunks.length; i += 2) {
+            if (world.isChunkLoaded(chunks[i], chunks[i + 1])) {
+                continue;
+            }
+
+            try {
+                futures.add((CompletableFuture<?>) GET_CHUNK_AT_ASYNC.invoke(world, chunks[i], chunks[i + 1]));
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                // Loaded synchronously on first access instead
+                break;
+            }
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    public static boolean hasTickets() {
+        return !CompatUtil.isPre1_14();
+    }
+
+    /**
+     * Keeps the chunk loaded until the ticket is removed. Does nothing on servers without chunk tickets.
+     */
+    public static void addTicket(final World world, final int chunkX, final int chunkZ, final Plugin plugin) {
+        if (hasTickets()) {
+            world.addPluginChunkTicket(chunkX, chunkZ, plugin);
+        }
+    }
+
+    public static void removeTicket(final World world, final int chunkX, final int chunkZ, final Plugin plugin) {
+        if (hasTickets()) {
+            world.removePluginChunkTicket(chunkX, chunkZ, plugin);
+        }
+    }
+}
@@ -10,12 +10,14 @@ public final class CompatUtil {
 
     @Getter
     private static final boolean BLOCK_EXPLODE_EVENT;
+    private static final boolean ENTITY_PICKUP_ITEM_EVENT;
 
     static {
         final String packageName = Bukkit.getServer().getClass().getPackage().getName();
         SUB_VERSION = NumberUtil.parseInt(packageName.substring(packageName.lastIndexOf('.') + 1).split("_")[1]).orElse(0);
         PAPER_SPIGOT = ReflectionUtil.getClassUnsafe("com.destroystokyo.paper.PaperConfig") != null || ReflectionUtil.getClassUnsafe("org.github.paperspigot.PaperSpigotConfig") != null;
         BLOCK_EXPLODE_EVENT = ReflectionUtil.getClassUnsafe("org.bukkit.event.block.BlockExplodeEvent") != null;
+        ENTITY_PICKUP_ITEM_EVENT = ReflectionUtil.getClassUnsafe("org.bukkit.event.entity.EntityPickupItemEvent") != null;
     }
 
     private CompatUtil() {}
@@ -39,4 +41,8 @@ public final class CompatUtil {
     public static boolean hasBlockExplodeEvent() {
         return BLOCK_EXPLODE_EVENT;
     }
+
+    public static boolean hasEntityPickupItemEvent() {
+        return ENTITY_PICKUP_ITEM_EVENT;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+package me.realized.de.arenaregen.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints.
+ */
+public final class IntList {
+
+    private int[] values;
+    private int size;
+
+    public IntList(final int capacity) {
+        this.values = new int[Math.max(capacity, 4)];
+    }
+
+    public IntList() {
+        this(16);
+    }
+
+    public void add(final int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1));
+        }
+
+        values[size++] = value;
+    }
+
+    public void addAll(final int[] values) {
+        if (size + values.length > this.values.length) {
+            this.values = Arrays.copyOf(this.values, Math.max(size + values.length, size + (size >> 1)));
+        }
+
+        System.arraycopy(values, 0, this.values, size, values.length);
+        size += values.length;
+    }
+
+    public int get(final int index) {
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,36 @@
+package me.realized.de.arenaregen.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.bukkit.plugin.Plugin;
+
+public final class MainThread {
+
+    private MainThread() {}
+
+    /**
+     * @return A future completed on the server thread with the result or error of the given stage. Completed right away
+     * if the stage completes on the server thread.
+     */
+    public static <T> CompletableFuture<T> handoff(final Plugin plugin, final CompletionStage<T> stage) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        stage.whenComplete((value, error) -> {
+            final Runnable complete = () -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            };
+
+            if (plugin.getServer().isPrimaryThread()) {
+                complete.run();
+            } else {
+                plugin.getServer().getScheduler().runTask(plugin, complete);
+            }
+        });
+
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+package me.realized.de.arenaregen.util;
+
+import lombok.Getter;
+
+/**
+ * Fixed-size array of small unsigned integers packed into longs. Entries never span two longs, so a lookup is a single
+ * array read plus a shift and mask.
+ */
+public final class PackedIndexArray {
+
+    @Getter
+    private final int size;
+    @Getter
+    private final int bits;
+    private final int perLong;
+    private final long mask;
+    private final long[] data;
+
+    public PackedIndexArray(final int size, final int bits, final long[] data) {
+        if (bits < 1 || bits > 32) {
+            throw new IllegalArgumentException("bits must be between 1 and 32");
+        }
+
+        this.size = size;
+        this.bits = bits;
+        this.perLong = 64 / bits;
+        this.mask = (1L << bits) - 1L;
+
+        if (data.length != longsFor(size, bits)) {
+            throw new IllegalArgumentException("Expected " + longsFor(size, bits) + " longs for " + size + " entries at " + bits + " bits, got " + data.length);
+        }
+
+        this.data = data;
+    }
+
+    public PackedIndexArray(final int size, final int bits) {
+        this(size, bits, new long[longsFor(size, bits)]);
+    }
+
+    public int get(final int index) {
+        final int cell = index / perLong;
+        final int shift = (index - cell * perLong) * bits;
+        return (int) (data[cell] >>> shift & mask);
+    }
+
+    public void set(final int index, final int value) {
+        final int cell = index / perLong;
+        final int shift = (index - cell * perLong) * bits;
+        data[cell] = data[cell] & ~(mask << shift) | (value & mask) << shift;
+    }
+
+    public int getMaxValue() {
+        return (int) mask;
+    }
+
+    /**
+     * @return The backing array. Exposed for serialization only and must not be modified.
+     */
+    public long[] getData() {
+        return data;
+    }
+
+    /**
+     * Copies every entry into a new array using the given number of bits per entry.
+     *
+     * @param bits Bits per entry of the new array. Must be large enough to hold every value currently stored.
+     * @return The resized copy.
+     */
+    public PackedIndexArray resize(final int bits) {
+        final PackedIndexArray result = new PackedIndexArray(size, bits);
+
+        for (int i = 0; i < size; i++) {
+            result.set(i, get(i));
+        }
+
+        return result;
+    }
+
+    public static int bitsFor(final int maxValue) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(maxValue));
+    }
+
+    public static int longsFor(final int size, final int bits) {
+        final int perLong = 64 / bits;
+        return (size + perLong - 1) / perLong;
+    }
+}
@@ -0,0 +1,85 @@
+package me.realized.de.arenaregen.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.Server;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Time each tick may spend on resetting zones. Runs every tick to follow the server's load: when adaptive, the
+ * configured budget shrinks while the server is lagging and grows while it has headroom. Paper's average tick time is
+ * used when available. Elsewhere only lag can be detected, from the measured time between ticks.
+ */
+public class TickBudget extends BukkitRunnable {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final Server server;
+    private final long baseNanos;
+    private final boolean adaptive;
+    private final Method averageTickTime;
+
+    private long lastTick;
+    private double averageInterval = TICK_NANOS;
+    private long nanos;
+
+    public TickBudget(final Server server, final double budgetMillis, final boolean adaptive) {
+        this.server = server;
+        this.baseNanos = (long) (budgetMillis * 1_000_000);
+        this.adaptive = adaptive;
+        this.averageTickTime = ReflectionUtil.getMethod(server.getClass(), "getAverageTickTime");
+        this.nanos = baseNanos;
+    }
+
+    /**
+     * @return Nanoseconds the current tick may spend on resets.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    @Override
+    public void run() {
+        final long now = System.nanoTime();
+
+        if (lastTick != 0) {
+            averageInterval = averageInterval * 0.9 + (now - lastTick) * 0.1;
+        }
+
+        lastTick = now;
+
+        if (adaptive) {
+            nanos = compute();
+        }
+    }
+
+    private long compute() {
+        final double tickMillis = getAverageTickTime();
+
+        if (tickMillis > 0) {
+            // Use up to half of what is left of the 50ms tick, within a quarter and twice the configured budget
+            final long headroom = (long) ((TICK_NANOS - tickMillis * 1_000_000) / 2);
+            return Math.max(baseNanos / 4, Math.min(baseNanos * 2, headroom));
+        }
+
+        if (averageInterval <= TICK_NANOS) {
+            return baseNanos;
+        }
+
+        // Ticks take longer than 50ms, so back off quadratically with the tick rate: 15 TPS gives about half the budget
+        final double ratio = TICK_NANOS / averageInterval;
+        return Math.max(baseNanos / 4, (long) (baseNanos * ratio * ratio));
+    }
+
+    private double getAverageTickTime() {
+        if (averageTickTime == null) {
+            return -1;
+        }
+
+        try {
+            return ((Number) averageTickTime.invoke(server)).doubleValue();
+        } catch (Exception ex) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package me.realized.de.arenaregen.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+
+/**
+ * Runs the extension's work off the main thread on a fixed number of threads, so that it never competes without limit
+ * with the server's own async pool. Tasks beyond the number of threads wait in a queue. Virtual threads are used on
+ * runtimes that support them, named platform daemon threads otherwise.
+ */
+public class WorkerPool implements Executor {
+
+    private final ThreadPoolExecutor executor;
+    @Getter
+    private final int size;
+    @Getter
+    private final boolean virtual;
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+    /**
+     * @param name Prefix of the thread names, followed by " #" and the thread's number.
+     * @param size Number of threads.
+     */
+    public WorkerPool(final String name, final int size) {
+        final ThreadFactory virtualFactory = virtualThreadFactory(name + " #");
+        this.size = size;
+        this.virtual = virtualFactory != null;
+        this.executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), virtual ? virtualFactory : platformThreadFactory(name + " #"));
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        executor.execute(task);
+        peakQueueDepth.accumulateAndGet(executor.getQueue().size(), Math::max);
+    }
+
+    /**
+     * @return Number of tasks waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return Highest number of tasks that waited for a thread at the same time.
+     */
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    /**
+     * @return Number of threads running a task.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getCompletedTasks() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * Stops accepting tasks and waits for the queued and running tasks to finish.
+     *
+     * @return false if the tasks did not finish in time.
+     */
+    public boolean shutdown(final long timeout, final TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private static ThreadFactory platformThreadFactory(final String prefix) {
+        final AtomicInteger threadId = new AtomicInteger();
+        return task -> {
+            final Thread thread = new Thread(task, prefix + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Thread.ofVirtual().name(prefix, 1).factory() on Java 21+, or null if virtual threads are not available
+    private static ThreadFactory virtualThreadFactory(final String prefix) {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Method name = builderClass.getMethod("name", String.class, Long.TYPE);
+            final Method factory = builderClass.getMethod("factory");
+            final Object builder = name.invoke(Thread.class.getMethod("ofVirtual").invoke(null), prefix, 1L);
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // Not available, or still a preview feature that is not enabled
+            return null;
+        }
+    }
+}
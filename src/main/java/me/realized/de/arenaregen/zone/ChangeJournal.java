@@ -0,0 +1,68 @@
+package me.realized.de.arenaregen.zone;
+
+import java.util.BitSet;
+import me.realized.de.arenaregen.zone.snapshot.BlockStore;
+
+/**
+ * Positions in a zone that may have changed since its last reset, stored as one bit per block relative to the zone's
+ * minimum corner. The journal is only trusted while it is valid: it starts out invalid for zones whose world state is
+ * unknown and becomes invalid when it overflows or when a change it cannot follow is reported.
+ */
+class ChangeJournal {
+
+    private final BlockStore blocks;
+    private final int capacity;
+
+    private BitSet positions = new BitSet();
+    private int size;
+    private boolean valid;
+
+    ChangeJournal(final BlockStore blocks, final int capacity, final boolean valid) {
+        this.blocks = blocks;
+        this.capacity = capacity;
+        this.valid = valid;
+    }
+
+    /**
+     * Records a position given in zone-local coordinates. Positions outside of the zone are ignored.
+     */
+    void record(final int x, final int y, final int z) {
+        if (!valid || x < 0 || y < 0 || z < 0 || x >= blocks.getSizeX() || y >= blocks.getSizeY() || z >= blocks.getSizeZ()) {
+            return;
+        }
+
+        final int index = blocks.toIndex(x, y, z);
+
+        if (positions.get(index)) {
+            return;
+        }
+
+        if (++size > capacity) {
+            invalidate();
+            return;
+        }
+
+        positions.set(index);
+    }
+
+    void invalidate() {
+        valid = false;
+        positions = new BitSet();
+        size = 0;
+    }
+
+    /**
+     * Hands over the recorded positions and starts a new, valid journal. The caller is expected to bring every position
+     * in the zone back to its stored state, which is what makes the new journal trustworthy.
+     *
+     * @return The recorded positions as indices given by {@link BlockStore#toIndex(int, int, int)}, or null if the journal
+     * was invalid and the whole zone has to be checked.
+     */
+    BitSet drain() {
+        final BitSet result = valid ? positions : null;
+        positions = new BitSet();
+        size = 0;
+        valid = true;
+        return result;
+    }
+}
@@ -0,0 +1,189 @@
+package me.realized.de.arenaregen.zone;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import me.realized.de.arenaregen.nms.NMS;
+import me.realized.de.arenaregen.zone.snapshot.BlockStore;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+/**
+ * Sends the blocks changed by resets to players. Sections with few changes are sent as multi block changes and the
+ * remaining changed sections of a chunk as one section-limited chunk packet. The sections changed since the zone was
+ * loaded are remembered, so players that may have missed an update can be sent exactly those later on.
+ */
+class ClientUpdates {
+
+    // Sections with at most this many changes are sent as a multi block change instead of as section data
+    private static final int MULTI_BLOCK_CHANGE_LIMIT = 64;
+    // Sections are tracked in an int mask, so sections outside of 0 - 511 on the y axis are sent as whole chunks
+    private static final int TRACKED_SECTIONS = 32;
+
+    private final NMS handler;
+    private final Server server;
+    private final World world;
+    private final BlockStore blocks;
+    private final int minX, minY, minZ;
+    private final int minChunkX, minChunkZ, chunksZ;
+    private final int[] sectionMasks;
+    private final Set<UUID> outdated = new HashSet<>();
+    private final ZoneStats stats;
+
+    ClientUpdates(final NMS handler, final Server server, final BlockStore blocks, final Location min, final Location max, final ZoneStats stats) {
+        this.handler = handler;
+        this.server = server;
+        this.world = min.getWorld();
+        this.blocks = blocks;
+        this.minX = min.getBlockX();
+        this.minY = min.getBlockY();
+        this.minZ = min.getBlockZ();
+        this.minChunkX = minX >> 4;
+        this.minChunkZ = minZ >> 4;
+        this.chunksZ = (max.getBlockZ() >> 4) - minChunkZ + 1;
+        this.sectionMasks = new int[((max.getBlockX() >> 4) - minChunkX + 1) * chunksZ];
+        this.stats = stats;
+    }
+
+    /**
+     * Sends the given positions to every player that can see them. Players in the world that are too far away to be
+     * sent the changes are marked as outdated in case their client still holds the chunks.
+     *
+     * @param changed Positions as indices given by {@link BlockStore#toIndex(int, int, int)}, grouped by chunk.
+     */
+    void send(final int[] changed) {
+        if (changed.length == 0) {
+            return;
+        }
+
+        final int viewDistance = server.getViewDistance();
+        final List<Player> players = world.getPlayers();
+        final List<Player> viewers = new ArrayList<>();
+        final int[] counts = new int[TRACKED_SECTIONS];
+        final short[][] positions = new short[TRACKED_SECTIONS][];
+        int start = 0;
+
+        while (start < changed.length) {
+            final int chunkX = (minX + blocks.getX(changed[start])) >> 4, chunkZ = (minZ + blocks.getZ(changed[start])) >> 4;
+            int end = start, mask = 0;
+
+            for (; end < changed.length; end++) {
+                final int index = changed[end];
+
+                if ((minX + blocks.getX(index)) >> 4 != chunkX || (minZ + blocks.getZ(index)) >> 4 != chunkZ) {
+                    break;
+                }
+
+                final int sectionY = (minY + blocks.getY(index)) >> 4;
+
+                if (sectionY < 0 || sectionY >= TRACKED_SECTIONS) {
+                    mask = -1;
+                } else if (mask != -1) {
+                    mask |= 1 << sectionY;
+                    counts[sectionY]++;
+                }
+            }
+
+            sectionMasks[(chunkX - minChunkX) * chunksZ + chunkZ - minChunkZ] |= mask;
+            viewers.clear();
+
+            for (final Player player : players) {
+                final Location location = player.getLocation();
+
+                if (Math.abs((location.getBlockX() >> 4) - chunkX) <= viewDistance && Math.abs((location.getBlockZ() >> 4) - chunkZ) <= viewDistance) {
+                    viewers.add(player);
+                } else {
+                    outdated.add(player.getUniqueId());
+                }
+            }
+
+            if (!viewers.isEmpty() && world.isChunkLoaded(chunkX, chunkZ)) {
+                send(viewers, world.getChunkAt(chunkX, chunkZ), changed, start, end, mask, counts, positions);
+            }
+
+            for (int sectionY = 0; sectionY < TRACKED_SECTIONS; sectionY++) {
+                counts[sectionY] = 0;
+            }
+
+            start = end;
+        }
+    }
+
+    private void send(final List<Player> viewers, final Chunk chunk, final int[] changed, final int start, final int end, final int mask,
+            final int[] counts, final short[][] positions) {
+        if (mask == -1) {
+            viewers.forEach(player -> sendChunkSections(player, chunk, -1));
+            return;
+        }
+
+        int sectionMask = 0;
+
+        for (int sectionY = 0; sectionY < TRACKED_SECTIONS; sectionY++) {
+            if (counts[sectionY] > MULTI_BLOCK_CHANGE_LIMIT) {
+                sectionMask |= 1 << sectionY;
+            } else if (counts[sectionY] > 0) {
+                positions[sectionY] = new short[counts[sectionY]];
+                counts[sectionY] = 0;
+            }
+        }
+
+        for (int i = start; i < end; i++) {
+            final int index = changed[i];
+            final int x = (minX + blocks.getX(index)) & 15, y = minY + blocks.getY(index), z = (minZ + blocks.getZ(index)) & 15;
+            final short[] section = positions[y >> 4];
+
+            if (section != null) {
+                section[counts[y >> 4]++] = (short) ((y & 15) << 8 | z << 4 | x);
+            }
+        }
+
+        for (final Player player : viewers) {
+            for (int sectionY = 0; sectionY < TRACKED_SECTIONS; sectionY++) {
+                if (positions[sectionY] != null) {
+                    handler.sendBlockChanges(player, chunk, sectionY, positions[sectionY]);
+                    stats.recordBlockChanges(positions[sectionY].length);
+                }
+            }
+
+            if (sectionMask != 0) {
+                sendChunkSections(player, chunk, sectionMask);
+            }
+        }
+
+        for (int sectionY = 0; sectionY < TRACKED_SECTIONS; sectionY++) {
+            positions[sectionY] = null;
+        }
+    }
+
+    /**
+     * Sends every section changed since the zone was loaded to the given players, unless they were sent all updates
+     * already.
+     */
+    void refresh(final Player... players) {
+        for (final Player player : players) {
+            if (player == null || !outdated.remove(player.getUniqueId())) {
+                continue;
+            }
+
+            for (int i = 0; i < sectionMasks.length; i++) {
+                final int chunkX = minChunkX + i / chunksZ, chunkZ = minChunkZ + i % chunksZ;
+
+                if (sectionMasks[i] == 0 || !world.isChunkLoaded(chunkX, chunkZ)) {
+                    continue;
+                }
+
+                sendChunkSections(player, world.getChunkAt(chunkX, chunkZ), sectionMasks[i]);
+            }
+        }
+    }
+
+    private void sendChunkSections(final Player player, final Chunk chunk, final int sectionMask) {
+        handler.sendChunkSections(player, chunk, sectionMask);
+        stats.recordChunkPacket(sectionMask == -1 ? world.getMaxHeight() >> 4 : Integer.bitCount(sectionMask));
+    }
+}
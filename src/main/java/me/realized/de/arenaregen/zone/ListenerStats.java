@@ -0,0 +1,58 @@
+package me.realized.de.arenaregen.zone;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cost of the protection listeners, which run for block events anywhere on the server. Only updated and read on the main
+ * thread.
+ */
+public class ListenerStats {
+
+    private final List<Counter> counters = new ArrayList<>();
+
+    Counter counter(final String name) {
+        final Counter counter = new Counter(name);
+        counters.add(counter);
+        return counter;
+    }
+
+    public List<Counter> getCounters() {
+        return Collections.unmodifiableList(counters);
+    }
+
+    public static class Counter {
+
+        private final String name;
+        private long calls, nanos;
+
+        Counter(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * @param start Value of {@link System#nanoTime()} when the handler was entered.
+         */
+        void record(final long start) {
+            calls++;
+            nanos += System.nanoTime() - start;
+        }
+
+        public double getTotalMillis() {
+            return ZoneStats.millis(nanos);
+        }
+
+        public double getAverageMicros() {
+            return calls > 0 ? nanos / 1000.0 / calls : 0;
+        }
+    }
+}
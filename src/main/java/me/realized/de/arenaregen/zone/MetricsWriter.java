@@ -0,0 +1,94 @@
+package me.realized.de.arenaregen.zone;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import me.realized.de.arenaregen.ArenaRegen;
+import me.realized.de.arenaregen.util.WorkerPool;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Appends the stats of every zone, the protection listeners, the reset scheduler and the worker pool to a CSV file, one
+ * value per line, so that they can be graphed over time. Values are collected on the main thread and written on the
+ * worker pool.
+ *
+ * <pre>
+ * time,scope,metric,value
+ * 1625097600000,arena1,last-duration-ms,412.5
+ * 1625097600000,listener,block-break-calls,1250
+ * </pre>
+ */
+public class MetricsWriter extends BukkitRunnable {
+
+    private static final String HEADER = "time,scope,metric,value";
+
+    private final ArenaRegen extension;
+    private final ResetZoneManager zoneManager;
+    private final File file;
+
+    public MetricsWriter(final ArenaRegen extension, final ResetZoneManager zoneManager) {
+        this.extension = extension;
+        this.zoneManager = zoneManager;
+        this.file = new File(extension.getDataFolder(), "metrics.csv");
+    }
+
+    @Override
+    public void run() {
+        final long time = System.currentTimeMillis();
+        final List<String> lines = new ArrayList<>();
+
+        final ResetScheduler scheduler = zoneManager.getScheduler();
+
+        for (final ResetZone zone : zoneManager.getZones()) {
+            for (final Map.Entry<String, Number> entry : zone.getStats().toMap().entrySet()) {
+                lines.add(time + "," + zone.getName() + "," + entry.getKey() + "," + entry.getValue());
+            }
+
+            // Only while the zone is being reset, the priority as its weight so that it can be graphed
+            final ResetPriority priority = scheduler.getPriority(zone);
+
+            if (priority != null) {
+                lines.add(time + "," + zone.getName() + ",wait-ms," + scheduler.getWaitTime(zone));
+                lines.add(time + "," + zone.getName() + ",priority," + priority.getWeight());
+            }
+        }
+
+        for (final ListenerStats.Counter counter : zoneManager.getListenerStats().getCounters()) {
+            lines.add(time + ",listener," + counter.getName() + "-calls," + counter.getCalls());
+            lines.add(time + ",listener," + counter.getName() + "-ms," + counter.getTotalMillis());
+        }
+
+        lines.add(time + ",scheduler,queue-depth," + scheduler.getQueueDepth());
+
+        final WorkerPool workers = extension.getWorkers();
+        lines.add(time + ",workers,queue-depth," + workers.getQueueDepth());
+        lines.add(time + ",workers,peak-queue-depth," + workers.getPeakQueueDepth());
+        lines.add(time + ",workers,active," + workers.getActiveCount());
+        lines.add(time + ",workers,completed-tasks," + workers.getCompletedTasks());
+
+        CompletableFuture.runAsync(() -> write(lines), workers);
+    }
+
+    private synchronized void write(final List<String> lines) {
+        final boolean created = !file.exists();
+
+        try (Writer writer = new FileWriter(file, true)) {
+            if (created) {
+                writer.write(HEADER);
+                writer.write('\n');
+            }
+
+            for (final String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (IOException ex) {
+            extension.error("Could not write " + file.getName() + "!", ex);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package me.realized.de.arenaregen.zone;
+
+import lombok.Getter;
+
+/**
+ * Priority of a reset. Higher priority resets run first in every tick and get a larger share of the tick budget,
+ * proportional to their weight.
+ */
+public enum ResetPriority {
+
+    /**
+     * A match in the arena has ended.
+     */
+    MATCH_END(1),
+    /**
+     * A match in the arena has ended while players are waiting in a queue for their next match.
+     */
+    QUEUED(2),
+    /**
+     * The reset was requested with a command.
+     */
+    MANUAL(4);
+
+    @Getter
+    private final int weight;
+
+    ResetPriority(final int weight) {
+        this.weight = weight;
+    }
+}
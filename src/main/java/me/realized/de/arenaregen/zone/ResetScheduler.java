@@ -0,0 +1,167 @@
+package me.realized.de.arenaregen.zone;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import me.realized.de.arenaregen.ArenaRegen;
+import me.realized.de.arenaregen.util.TickBudget;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Runs the resets of every zone from a single task and splits one per-tick budget between them. Higher priority
+ * resets run first and get a larger share of the budget, while resets of the same priority take turns going first.
+ * Time a reset leaves unused, for example while its diff is still being computed, is handed to the resets after it.
+ */
+public class ResetScheduler extends BukkitRunnable {
+
+    private final ArenaRegen extension;
+    private final TickBudget budget;
+    private final List<Entry> entries = new ArrayList<>();
+    private int turn;
+
+    ResetScheduler(final ArenaRegen extension) {
+        this.extension = extension;
+        this.budget = extension.getTickBudget();
+    }
+
+    void submit(final ResetZone zone, final Job job, final ResetPriority priority) {
+        entries.add(new Entry(zone, job, priority));
+    }
+
+    /**
+     * Changes the priority of a queued or running job, which takes effect from the next tick.
+     */
+    void setPriority(final Job job, final ResetPriority priority) {
+        for (final Entry entry : entries) {
+            if (entry.job == job) {
+                entry.priority = priority;
+            }
+        }
+    }
+
+    void remove(final Job job) {
+        entries.removeIf(entry -> {
+            if (entry.job != job) {
+                return false;
+            }
+
+            entry.removed = true;
+            return true;
+        });
+    }
+
+    /**
+     * @return Number of resets that are queued or running.
+     */
+    public int getQueueDepth() {
+        return entries.size();
+    }
+
+    /**
+     * @return Milliseconds since the given zone's current reset was submitted, or -1 if the zone is not being reset.
+     */
+    public long getWaitTime(final ResetZone zone) {
+        for (final Entry entry : entries) {
+            if (entry.zone == zone) {
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.submitted);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return Priority of the given zone's current reset, or null if the zone is not being reset.
+     */
+    public ResetPriority getPriority(final ResetZone zone) {
+        for (final Entry entry : entries) {
+            if (entry.zone == zone) {
+                return entry.priority;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void run() {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        final List<Entry> order = new ArrayList<>(entries);
+        // Rotate first so that the stable sort below keeps resets of the same priority taking turns
+        Collections.rotate(order, -(turn++ % order.size()));
+        order.sort(Comparator.comparingInt((Entry entry) -> entry.priority.getWeight()).reversed());
+
+        long remaining = budget.getNanos();
+        int remainingWeight = 0;
+
+        for (final Entry entry : order) {
+            remainingWeight += entry.priority.getWeight();
+        }
+
+        for (final Entry entry : order) {
+            final int weight = entry.priority.getWeight();
+
+            // Skip resets removed by a callback of a reset that ran before them in this tick
+            if (entry.removed) {
+                remainingWeight -= weight;
+                continue;
+            }
+
+            final long start = System.nanoTime();
+            final long share = remaining * weight / remainingWeight;
+
+            try {
+                if (entry.job.run(start + share)) {
+                    entries.remove(entry);
+                }
+            } catch (Exception ex) {
+                extension.error("Could not reset zone '" + entry.zone.getName() + "'!", ex);
+                entries.remove(entry);
+                entry.job.abort();
+            }
+
+            remaining = Math.max(0, remaining - (System.nanoTime() - start));
+            remainingWeight -= weight;
+        }
+    }
+
+    /**
+     * A reset run in small steps by the scheduler.
+     */
+    interface Job {
+
+        /**
+         * Does as much work as fits before the deadline. Jobs always make some progress, even if the deadline has
+         * already passed.
+         *
+         * @param deadline Value of {@link System#nanoTime()} to stop at.
+         * @return true once the job is done and should not be run again.
+         */
+        boolean run(final long deadline);
+
+        /**
+         * Called instead of {@link #run(long)} ever returning true when the job is stopped early.
+         */
+        void abort();
+    }
+
+    private static class Entry {
+
+        private final ResetZone zone;
+        private final Job job;
+        private ResetPriority priority;
+        private final long submitted = System.nanoTime();
+        private boolean removed;
+
+        Entry(final ResetZone zone, final Job job, final ResetPriority priority) {
+            this.zone = zone;
+            this.job = job;
+            this.priority = priority;
+        }
+    }
+}
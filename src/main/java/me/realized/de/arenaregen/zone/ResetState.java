@@ -0,0 +1,26 @@
+package me.realized.de.arenaregen.zone;
+
+/**
+ * Phase of a zone's reset. A zone moves through the phases in order and returns to {@link #IDLE} once the reset is
+ * complete or stopped.
+ */
+public enum ResetState {
+
+    /**
+     * No reset is queued or running.
+     */
+    IDLE,
+    /**
+     * Chunks are being loaded and captured, and compared against the stored blocks. Nothing has been written yet.
+     */
+    INDEXING,
+    /**
+     * Changed blocks are being written and relit.
+     */
+    APPLYING,
+    /**
+     * Every block was written. The chunks are sent to players and entities are restored once queued light updates were
+     * processed.
+     */
+    FINALIZING
+}
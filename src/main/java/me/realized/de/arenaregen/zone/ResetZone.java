@@ -3,15 +3,25 @@ package me.realized.de.arenaregen.zone;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import lombok.Getter;
 import me.realized.de.arenaregen.ArenaRegen;
 import me.realized.de.arenaregen.config.Config;
+import me.realized.de.arenaregen.nms.BlockBatch;
 import me.realized.de.arenaregen.nms.NMS;
-import me.realized.de.arenaregen.util.BlockInfo;
 import me.realized.de.arenaregen.util.Callback;
-import me.realized.de.arenaregen.util.Pair;
-import me.realized.de.arenaregen.util.Position;
+import me.realized.de.arenaregen.util.ChunkLoading;
+import me.realized.de.arenaregen.util.IntList;
+import me.realized.de.arenaregen.zone.snapshot.BlockStore;
+import me.realized.de.arenaregen.zone.snapshot.EntityInfo;
+import me.realized.de.arenaregen.zone.snapshot.SectionStore;
+import me.realized.de.arenaregen.zone.snapshot.ZoneFile;
+import me.realized.de.arenaregen.zone.snapshot.ZoneSnapshot;
 import me.realized.duels.api.Duels;
 import me.realized.duels.api.arena.Arena;
 import org.bukkit.Bukkit;
@@ -20,41 +30,60 @@ import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.*;
-import org.bukkit.scheduler.BukkitRunnable;
 
 public class ResetZone {
 
+    // Number of positions written or relit between two checks of the deadline
+    private static final int SLICE_SIZE = 256;
+
+    private final ArenaRegen extension;
     @Getter
     private final Duels api;
     private final NMS handler;
 
     @Getter
     private final Config config;
+    private final ResetScheduler scheduler;
     @Getter
     private final Arena arena;
     @Getter
     private final Location min, max;
 
-    private final Set<Location> entitiesPosition = new HashSet<>();
-    private final Map<Position, BlockInfo> blocks = new HashMap<>();
+    private final ZoneEntities entities;
+    // Dropped items inside of the zone, fed by the manager's item listener
+    private final Set<Item> items = new HashSet<>();
+    private final BlockStore blocks;
+    private final BlockBatch batch = new BlockBatch();
+    private final ChangeJournal journal;
     private final File file;
 
+    private final ClientUpdates updates;
     @Getter
-    private BukkitRunnable task;
+    private final ZoneStats stats = new ZoneStats();
 
-    @Getter
-    private Set<ChunkLoc> chunks = new HashSet<>();
+    // Chunks kept loaded with plugin chunk tickets, as keys from chunkKey
+    private final Set<Long> tickets = new HashSet<>();
+    // Time the held chunks were last needed by a match or a reset
+    private long lastUsed;
 
-    ResetZone(final ArenaRegen extension, final Duels api, final Arena arena, final File folder, final Location first, final Location second) {
+    // Phase of the zone's reset. The reset job is set exactly while the zone is not idle.
+    @Getter
+    private ResetState resetState = ResetState.IDLE;
+    private Reset reset;
+    private Capture capture;
+    // Set when the zone has contents that are not in its file yet. Cleared on the main thread when a copy is taken for
+    // saving and set again from the worker thread if writing the copy fails.
+    private volatile boolean dirty;
+
+    ResetZone(final ArenaRegen extension, final Duels api, final ResetScheduler scheduler, final Arena arena, final File folder, final Location first, final Location second) {
+        this.extension = extension;
         this.api = api;
         this.handler = extension.getHandler();
         this.config = extension.getConfiguration();
+        this.scheduler = scheduler;
         this.arena = arena;
-        this.file = new File(folder, arena.getName() + ".yml");
+        this.file = new File(folder, arena.getName() + ZoneFile.EXTENSION);
         this.min = new Location(
                 first.getWorld(),
                 Math.min(first.getBlockX(), second.getBlockX()),
@@ -67,46 +96,39 @@ public class ResetZone {
                 Math.max(first.getBlockY(), second.getBlockY()),
                 Math.max(first.getBlockZ(), second.getBlockZ())
         );
+        this.blocks = new BlockStore(max.getBlockX() - min.getBlockX() + 1, max.getBlockY() - min.getBlockY() + 1, max.getBlockZ() - min.getBlockZ() + 1);
+        // The zone is only indexed once the capture is done, so changes made while capturing are missed and the first
+        // reset has to scan the whole zone.
+        this.journal = new ChangeJournal(blocks, config.getMaxTrackedChanges(), false);
+        this.updates = new ClientUpdates(handler, api.getServer(), blocks, min, max, stats);
+        this.entities = new ZoneEntities(min, max, Collections.emptyList());
+        this.dirty = true;
     }
 
-    ResetZone(final ArenaRegen extension, final Duels api, final Arena arena, final File file) {
+    ResetZone(final ArenaRegen extension, final Duels api, final ResetScheduler scheduler, final Arena arena, final File folder, final ZoneSnapshot snapshot) {
+        this.extension = extension;
         this.api = api;
         this.handler = extension.getHandler();
         this.config = extension.getConfiguration();
-
-        final FileConfiguration config = YamlConfiguration.loadConfiguration(file);
+        this.scheduler = scheduler;
         this.arena = arena;
-        this.file = file;
+        this.file = new File(folder, arena.getName() + ZoneFile.EXTENSION);
 
-        final String worldName = config.getString("world");
-        final World world;
+        final World world = Bukkit.getWorld(snapshot.getWorldName());
 
-        if (worldName == null || (world = Bukkit.getWorld(worldName)) == null) {
-            throw new NullPointerException("worldName or world is null");
+        if (world == null) {
+            throw new NullPointerException("world is null");
         }
 
-        this.min = new Location(world, config.getInt("min.x"), config.getInt("min.y"), config.getInt("min.z"));
-        this.max = new Location(world, config.getInt("max.x"), config.getInt("max.y"), config.getInt("max.z"));
-
-        final ConfigurationSection blocks = config.getConfigurationSection("blocks");
-
-        if (blocks == null) {
-            return;
-        }
-
-        blocks.getKeys(false).forEach(key -> {
-            final String[] posData = key.split(";");
-            final Position pos = new Position(Integer.parseInt(posData[0]), Integer.parseInt(posData[1]), Integer.parseInt(posData[2]));
-            final String[] blockData = blocks.getString(key).split(";");
-            final BlockInfo info = new BlockInfo(Material.getMaterial(blockData[0]), Byte.parseByte(blockData[1]));
-            this.blocks.put(pos, info);
-        });
-
-        if(config.get("entities") != null) {
-            for(String key : config.getConfigurationSection("entities").getKeys(false)) {
-                entitiesPosition.add(config.getLocation("entities." + key + ".Location"));
-            }
-        }
+        this.min = new Location(world, snapshot.getMinX(), snapshot.getMinY(), snapshot.getMinZ());
+        this.max = new Location(world, snapshot.getMaxX(), snapshot.getMaxY(), snapshot.getMaxZ());
+        this.blocks = snapshot.getBlocks();
+        // Look the server's states up once here instead of for every block written by a reset
+        blocks.resolve(handler::resolve, handler::getStateId);
+        // Changes made while the zone was not loaded are unknown, so the first reset has to scan the whole zone.
+        this.journal = new ChangeJournal(blocks, config.getMaxTrackedChanges(), false);
+        this.updates = new ClientUpdates(handler, api.getServer(), blocks, min, max, stats);
+        this.entities = new ZoneEntities(min, max, snapshot.getEntities());
     }
 
     public String getName() {
@@ -114,267 +136,752 @@ public class ResetZone {
     }
 
     public int getTotalBlocks() {
-        return blocks.size();
+        return blocks.getNonAirBlocks();
     }
 
-    void save() throws IOException {
-        if (!file.exists()) {
-            file.createNewFile();
-        }
+    boolean isDirty() {
+        return dirty;
+    }
 
-        final FileConfiguration config = YamlConfiguration.loadConfiguration(file);
-        config.set("world", min.getWorld().getName());
-        config.set("min.x", min.getBlockX());
-        config.set("min.y", min.getBlockY());
-        config.set("min.z", min.getBlockZ());
-        config.set("max.x", max.getBlockX());
-        config.set("max.y", max.getBlockY());
-        config.set("max.z", max.getBlockZ());
-        blocks.forEach((position, info) -> config.set("blocks." + position.toString(), info.toString()));
-        entitiesPosition.forEach(location -> {
-            Optional<Entity> entityOptional = atLocation(location);
-            entityOptional.ifPresent(entity -> config.set("entities." + entity.getUniqueId() + ".Location", entity.getLocation()));
-        });
-        config.save(file);
+    void markDirty() {
+        dirty = true;
     }
 
-    Optional<Entity> atLocation(Location location) {
-        return location.getWorld().getNearbyEntities(location, 3, 3, 3).stream().filter(Objects::nonNull).filter(e -> e.getLocation().equals(location)).findAny();
+    /**
+     * Copies everything that has to be saved and marks the zone as saved. The copy does not change afterwards and can be
+     * written from another thread. The block store is shared instead of copied, since it is no longer modified once the
+     * zone's blocks were loaded.
+     */
+    ZoneSnapshot snapshot() {
+        dirty = false;
+
+        return new ZoneSnapshot(
+                min.getWorld().getName(),
+                min.getBlockX(), min.getBlockY(), min.getBlockZ(),
+                max.getBlockX(), max.getBlockY(), max.getBlockZ(),
+                blocks,
+                Collections.unmodifiableList(new ArrayList<>(entities.getEntities()))
+        );
     }
 
-    public Set<Location> getEntitiesPosition() {
-        return entitiesPosition;
+    /**
+     * Copies the zone to a position moved by the given offset, for another arena built from the same map. The copy
+     * shares every section with this zone, so neither the world nor the zone's blocks have to be read.
+     */
+    ZoneSnapshot copy(final int dx, final int dy, final int dz, final SectionStore store) {
+        final List<EntityInfo> translated = new ArrayList<>();
+
+        for (final EntityInfo info : entities.getEntities()) {
+            translated.add(info.translate(dx, dy, dz));
+        }
+
+        return new ZoneSnapshot(
+                min.getWorld().getName(),
+                min.getBlockX() + dx, min.getBlockY() + dy, min.getBlockZ() + dz,
+                max.getBlockX() + dx, max.getBlockY() + dy, max.getBlockZ() + dz,
+                blocks.copy(store),
+                Collections.unmodifiableList(translated)
+        );
+    }
+
+    void write(final ZoneSnapshot snapshot, final SectionStore store) throws IOException {
+        ZoneFile.write(file, snapshot, store);
     }
 
     void delete() {
-        blocks.clear();
         file.delete();
-        entitiesPosition.clear();
     }
 
-    void loadBlocks() {
-        // Only store non-air blocks
-        doForAll(block -> {
-            if (block.getType() == Material.AIR) {
-                return;
-            }
+    /**
+     * Gives back the zone's sections to the store. The zone must not be reset afterwards.
+     */
+    void release(final SectionStore store) {
+        blocks.release(store);
+    }
+
+    /**
+     * Starts capturing the zone's blocks and entities from the world, run in steps by the {@link ResetScheduler}.
+     *
+     * @param progress Called with the percentage of chunks captured so far, at most once per quarter.
+     * @param onDone Called with null once the capture is complete, or with the error that stopped it. A stopped
+     * capture is reported with a {@link CancellationException}.
+     */
+    void capture(final SectionStore store, final IntConsumer progress, final Consumer<Throwable> onDone) {
+        cancelCapture();
+        capture = new Capture(store, progress, onDone);
+        scheduler.submit(this, capture, ResetPriority.MANUAL);
+    }
 
-            blocks.put(new Position(block), new BlockInfo(block.getState()));
+    void cancelCapture() {
+        if (capture == null) {
+            return;
+        }
 
-            block.getLocation().getWorld().getNearbyEntities(block.getLocation(), 3, 3, 3).stream()
-                    .filter(Objects::nonNull)
-                    .filter(e -> e.getType() == EntityType.ENDER_CRYSTAL)
-                    .forEach(e -> this.entitiesPosition.add(e.getLocation()));
-        });
+        scheduler.remove(capture);
+        capture.abort();
     }
 
+    /**
+     * Resends the sections changed by resets to players that may not have received them, such as players that were
+     * too far away at the time. Nothing is sent to players that are up to date.
+     */
     public void refreshChunks(final Player... players) {
-        chunks.forEach(chunkLoc -> {
-            final Chunk chunk = min.getWorld().getChunkAt(chunkLoc.x, chunkLoc.z);
+        updates.refresh(players);
+    }
 
-            if (!chunk.isLoaded()) {
-                return;
+    /**
+     * Keeps every chunk of the zone loaded, so that players joining a match and the reset afterwards do not wait for
+     * them to load. Does nothing on servers without chunk tickets.
+     */
+    void holdChunks() {
+        final int minChunkX = min.getBlockX() >> 4, minChunkZ = min.getBlockZ() >> 4;
+        final int maxChunkX = max.getBlockX() >> 4, maxChunkZ = max.getBlockZ() >> 4;
+        final int[] chunks = new int[(maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1) * 2];
+        int i = 0;
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                chunks[i++] = chunkX;
+                chunks[i++] = chunkZ;
             }
+        }
+
+        holdChunks(chunks);
+    }
 
-            for (final Player player : players) {
-                handler.sendChunkUpdate(player, chunk);
+    // Adds tickets for the given (x, z) chunk pairs that are not held yet.
+    private void holdChunks(final int[] chunks) {
+        lastUsed = System.currentTimeMillis();
+
+        if (!ChunkLoading.hasTickets()) {
+            return;
+        }
+
+        final World world = min.getWorld();
+
+        for (int i = 0; i < chunks.length; i += 2) {
+            if (tickets.add(chunkKey(chunks[i], chunks[i + 1]))) {
+                ChunkLoading.addTicket(world, chunks[i], chunks[i + 1], api);
             }
-        });
+        }
+    }
+
+    /**
+     * Removes every ticket added by this zone, allowing the server to unload its chunks again.
+     */
+    void releaseChunks() {
+        final World world = min.getWorld();
+
+        for (final long key : tickets) {
+            ChunkLoading.removeTicket(world, (int) (key >> 32), (int) key, api);
+        }
+
+        tickets.clear();
+    }
+
+    // Chunks held for a reset or capture are only kept afterwards if chunk tickets are enabled.
+    private void releaseChunksIfUnpinned() {
+        if (!config.isChunkTickets()) {
+            releaseChunks();
+        }
+    }
+
+    /**
+     * @return true if the zone holds chunks that were not needed by a match or reset for at least the given time.
+     */
+    boolean isIdle(final long now, final long idleMillis) {
+        return !tickets.isEmpty() && resetState == ResetState.IDLE && capture == null && !arena.isUsed() && now - lastUsed >= idleMillis;
+    }
+
+    private static long chunkKey(final int chunkX, final int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
     }
 
     public boolean isResetting() {
-        return task != null;
+        return resetState != ResetState.IDLE;
     }
 
-    private void doForAll(final Consumer<Block> consumer) {
-        for (int x = min.getBlockX(); x <= max.getBlockX(); x++) {
-            for (int y = min.getBlockY(); y <= max.getBlockY(); y++) {
-                for (int z = min.getBlockZ(); z <= max.getBlockZ(); z++) {
-                    consumer.accept(min.getWorld().getBlockAt(x, y, z));
-                }
-            }
+    /**
+     * Stops the reset in progress, if any, and enables the arena again.
+     */
+    void cancelReset() {
+        if (resetState == ResetState.IDLE) {
+            return;
         }
+
+        final Reset reset = this.reset;
+        scheduler.remove(reset);
+        reset.abort();
     }
 
-    private void doForAllEntities(final Consumer<Location> consumer) {
-        min.getWorld().getEntitiesByClass(EnderCrystal.class).stream().filter(crystal -> contains(crystal.getLocation())).forEach(Entity::remove);
-        if(entitiesPosition.isEmpty()) {
-            consumer.accept(null);
+
+    /**
+     * Runs the reset in progress, if any, to completion on the current thread without waiting for chunks to load
+     * asynchronously. Used before the zone is saved when the extension is disabled, so the worker pool must still be
+     * running.
+     */
+    void finishReset() {
+        if (resetState == ResetState.IDLE) {
             return;
         }
-        for(Location location : entitiesPosition) {
-            consumer.accept(location);
+
+        final Reset reset = this.reset;
+        scheduler.remove(reset);
+
+        try {
+            reset.drain();
+        } catch (Exception ex) {
+            extension.error("Could not reset zone '" + getName() + "'!", ex);
+            reset.abort();
         }
     }
 
-    // Called before reset zones are saved to files.
-    public void resetInstant() {
-        doForAll(block -> {
-            final Position position = new Position(block);
-            final BlockInfo info = blocks.get(position);
+    public void reset(final Callback onDone) {
+        reset(onDone, false, ResetPriority.MATCH_END);
+    }
 
-            if (info == null) {
-                if (block.getType() != Material.AIR) {
-                    handler.setBlockFast(block, Material.AIR, 0);
-                }
+    /**
+     * Requests a reset of the zone. If the zone is already being reset, the request is merged into the reset in progress
+     * instead of starting another one: its callback is called together with the others once that reset is complete, and
+     * the reset takes on the higher of the two priorities. A full scan requested while only tracked changes are being
+     * indexed restarts the reset, or runs one more pass over the whole zone if blocks are already being written.
+     *
+     * @param onDone Called once the zone has been reset.
+     * @param fullScan true to check every block in the zone even if all changes since the last reset were tracked.
+     * @param priority Priority of this reset relative to the resets of other zones.
+     */
+    public void reset(final Callback onDone, final boolean fullScan, final ResetPriority priority) {
+        final boolean scanAll = fullScan || !config.isTrackChanges();
+
+        if (resetState != ResetState.IDLE) {
+            reset.merge(onDone, scanAll, priority);
+            return;
+        }
 
-                return;
-            } else if (info.matches(block)) {
-                return;
-            }
+        final List<Callback> callbacks = new ArrayList<>();
 
-            handler.setBlockFast(block, info.getType(), info.getData());
-        });
+        if (onDone != null) {
+            callbacks.add(onDone);
+        }
 
-        doForAllEntities(entity -> {
-            if(entity != null) {
-                entity.getWorld().spawnEntity(entity, EntityType.ENDER_CRYSTAL);
-            }
-        });
+        arena.setDisabled(true);
+        startReset(callbacks, scanAll, false, priority);
+    }
 
-        if (!config.isRemoveDroppedItems()) {
+    /**
+     * Writes every block of the zone to the world without comparing it against the world first. Used to build a copied
+     * zone at its position, where the world is not expected to hold the zone's blocks yet and a full scan would only
+     * find most of them changed. If the zone is already being reset, this is a manual reset with a full scan instead.
+     *
+     * @param onDone Called once the zone has been built.
+     */
+    void build(final Callback onDone) {
+        if (resetState != ResetState.IDLE) {
+            reset(onDone, true, ResetPriority.MANUAL);
             return;
         }
 
-        min.getWorld().getEntitiesByClass(Item.class).stream().filter(item -> contains(item.getLocation())).forEach(Entity::remove);
-    }
+        final List<Callback> callbacks = new ArrayList<>();
+
+        if (onDone != null) {
+            callbacks.add(onDone);
+        }
 
-    public void reset(final Callback onDone) {
         arena.setDisabled(true);
-        task = new IndexTask(onDone);
-        task.runTaskTimer(api, 1L, 1L);
-        doForAllEntities(entity -> {
-            if(entity != null) {
-                entity.getWorld().spawnEntity(entity, EntityType.ENDER_CRYSTAL);
+        startReset(callbacks, true, true, ResetPriority.MANUAL);
+    }
+
+    private void startReset(final List<Callback> callbacks, final boolean scanAll, final boolean writeAll, final ResetPriority priority) {
+        final BitSet changes = journal.drain();
+        reset = new Reset(callbacks, scanAll ? null : changes, writeAll, priority);
+        resetState = ResetState.INDEXING;
+        stats.resetStarted();
+        scheduler.submit(this, reset, priority);
+    }
+
+    // Ends the reset in progress. Every started reset is counted as either finished or aborted once.
+    private void endReset(final boolean finished) {
+        reset = null;
+        resetState = ResetState.IDLE;
+
+        if (finished) {
+            stats.resetFinished();
+        } else {
+            stats.resetAborted();
+        }
+    }
+
+    // Fills the batch with the stored state of changed[from] up to changed[to - 1] one chunk at a time and passes every
+    // filled batch to the action. The positions must be grouped by chunk.
+    private void forEachChunk(final int[] changed, final int from, final int to, final BiConsumer<Chunk, BlockBatch> action) {
+        final World world = min.getWorld();
+        int start = from;
+
+        while (start < to) {
+            final int chunkX = (min.getBlockX() + blocks.getX(changed[start])) >> 4, chunkZ = (min.getBlockZ() + blocks.getZ(changed[start])) >> 4;
+            int end = start;
+            batch.clear();
+
+            for (; end < to; end++) {
+                final int index = changed[end];
+                final int x = blocks.getX(index), y = blocks.getY(index), z = blocks.getZ(index);
+                final int worldX = min.getBlockX() + x, worldZ = min.getBlockZ() + z;
+
+                if (worldX >> 4 != chunkX || worldZ >> 4 != chunkZ) {
+                    break;
+                }
+
+                batch.add(worldX & 15, min.getBlockY() + y, worldZ & 15, blocks.getState(x, y, z));
+            }
+
+            action.accept(world.getChunkAt(chunkX, chunkZ), batch);
+            start = end;
+        }
+
+        batch.clear();
+    }
+
+    void trackItem(final Item item) {
+        items.add(item);
+    }
+
+    void untrackItem(final Item item) {
+        items.remove(item);
+    }
+
+    /**
+     * Removes the dropped items tracked in this zone. Items that were picked up, merged or despawned in a way the item
+     * listener did not see are skipped.
+     */
+    public void removeItems() {
+        for (final Item item : items) {
+            if (item.isValid()) {
+                item.remove();
             }
-        });
+        }
+
+        items.clear();
+    }
+
+    /**
+     * Marks the given position as changed if it is inside of this zone.
+     */
+    void recordChange(final World world, final int x, final int y, final int z) {
+        if (min.getWorld().equals(world)) {
+            journal.record(x - min.getBlockX(), y - min.getBlockY(), z - min.getBlockZ());
+        }
+    }
+
+    /**
+     * Called when the zone was changed in a way that cannot be tracked. The next reset will scan the whole zone.
+     */
+    void invalidateChanges() {
+        journal.invalidate();
     }
 
     private boolean contains(final Location location) {
-        return min.getWorld().equals(location.getWorld())
-                && min.getBlockX() <= location.getBlockX() && location.getBlockX() <= max.getBlockX()
-                && min.getBlockY() <= location.getBlockY() && location.getBlockY() <= max.getBlockY()
-                && min.getBlockZ() <= location.getBlockZ() && location.getBlockZ() <= max.getBlockZ();
+        return contains(location.getWorld(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    boolean contains(final World world, final int x, final int y, final int z) {
+        return min.getWorld().equals(world)
+                && min.getBlockX() <= x && x <= max.getBlockX()
+                && min.getBlockY() <= y && y <= max.getBlockY()
+                && min.getBlockZ() <= z && z <= max.getBlockZ();
+    }
+
+    /**
+     * @return true if the zone shares at least one position with the given bounds.
+     */
+    boolean intersects(final World world, final int minX, final int minY, final int minZ, final int maxX, final int maxY, final int maxZ) {
+        return min.getWorld().equals(world)
+                && min.getBlockX() <= maxX && minX <= max.getBlockX()
+                && min.getBlockY() <= maxY && minY <= max.getBlockY()
+                && min.getBlockZ() <= maxZ && minZ <= max.getBlockZ();
     }
 
     boolean isCached(final Block block) {
-        return contains(block.getLocation()) && blocks.containsKey(new Position(block));
+        final int x = block.getX(), y = block.getY(), z = block.getZ();
+        return contains(block.getWorld(), x, y, z) && !blocks.isAir(x - min.getBlockX(), y - min.getBlockY(), z - min.getBlockZ());
     }
 
-    private static class ChunkLoc {
+    /**
+     * A single reset of this zone, run in steps by the {@link ResetScheduler}. The affected chunks are loaded
+     * asynchronously where the server supports it and held for the rest of the reset. Snapshots of them are captured
+     * and compared against the stored blocks on the worker pool. The changed positions are then written, relit and
+     * finally sent to the players that can see them. See {@link ResetState} for the phases.
+     */
+    private class Reset implements ResetScheduler.Job {
+
+        private final List<Callback> callbacks;
+        private final BitSet journaled;
+        // Set to write every position without capturing and comparing the chunks
+        private final boolean writeAll;
+        private ResetPriority priority;
+        // Set when a full scan was requested after blocks were already written
+        private boolean rescan;
+        private boolean draining;
+        private final ZoneDiff diff = new ZoneDiff(handler, blocks, min, max);
+        private int[] pending;
+        private CompletableFuture<Void> loading;
+        private int captured;
+        // Diffs handed to the worker pool, and their combined result
+        private List<CompletableFuture<int[]>> results;
+        private CompletableFuture<int[]> result;
+        private int[] changed;
+        private int cursor;
+        private int lightCursor;
+        private long indexStart;
+        // Written by the worker that completes the diff, read once the result is available
+        private volatile long indexNanos;
+
+        /**
+         * @param journaled Positions recorded by the change journal, or null to check every block in the zone.
+         * @param writeAll true to write every block in the zone instead of only the changed ones. Requires journaled
+         * to be null.
+         */
+        Reset(final List<Callback> callbacks, final BitSet journaled, final boolean writeAll, final ResetPriority priority) {
+            this.callbacks = callbacks;
+            this.journaled = journaled;
+            this.writeAll = writeAll;
+            this.priority = priority;
+        }
 
-        private final int x, z;
+        void merge(final Callback onDone, final boolean scanAll, final ResetPriority priority) {
+            if (onDone != null) {
+                callbacks.add(onDone);
+            }
+
+            final ResetPriority merged = priority.getWeight() > this.priority.getWeight() ? priority : this.priority;
+
+            if (scanAll && journaled != null) {
+                if (resetState == ResetState.INDEXING) {
+                    // Nothing was written yet, so the reset can start over with a full scan.
+                    scheduler.remove(this);
+                    cancelDiff();
+                    endReset(false);
+                    startReset(callbacks, true, false, merged);
+                    return;
+                }
+
+                rescan = true;
+            }
 
-        ChunkLoc(final Chunk chunk) {
-            this.x = chunk.getX();
-            this.z = chunk.getZ();
+            if (merged != this.priority) {
+                this.priority = merged;
+                scheduler.setPriority(this, merged);
+            }
         }
 
-        @Override
-        public boolean equals(final Object o) {
-            if (this == o) { return true; }
-            if (o == null || getClass() != o.getClass()) { return false; }
-            final ChunkLoc chunkLoc = (ChunkLoc) o;
-            return x == chunkLoc.x && z == chunkLoc.z;
+        // Runs the remaining steps back to back. Chunks are loaded on access and the diff is waited for.
+        void drain() {
+            draining = true;
+
+            while (!step(Long.MAX_VALUE)) {
+                // Each step processes at most blocks-per-tick positions
+            }
         }
 
         @Override
-        public int hashCode() {
-            return Objects.hash(x, z);
+        public boolean run(final long deadline) {
+            final long start = System.nanoTime();
+
+            try {
+                return step(deadline);
+            } finally {
+                stats.recordTick(System.nanoTime() - start);
+            }
         }
-    }
 
-    public class IndexTask extends BukkitRunnable {
+        private boolean step(final long deadline) {
+            if (loading == null) {
+                pending = diff.getChunksToCapture(journaled);
+                indexStart = System.nanoTime();
+                loading = ChunkLoading.loadAsync(min.getWorld(), pending);
+            }
 
-        private final Callback onDone;
-        private final Queue<Pair<Block, BlockInfo>> changed = new LinkedList<>();
-        private final Queue<Set<Location>> entityChanged = new LinkedList<>();
-        private int x = min.getBlockX();
+            // A failed load is not checked, the remaining chunks are then loaded while capturing.
+            if (!loading.isDone() && !draining) {
+                return false;
+            }
 
-        public IndexTask(final Callback onDone) {
-            this.onDone = onDone;
+            if (result == null) {
+                capture(deadline);
+                return false;
+            }
+
+            if (changed == null) {
+                if (!result.isDone() && !draining) {
+                    return false;
+                }
+
+                try {
+                    changed = result.join();
+                } catch (CompletionException ex) {
+                    extension.error("Could not index reset zone '" + getName() + "'!", ex.getCause());
+                    // Nothing is applied, so the next reset has to look at the whole zone again.
+                    journal.invalidate();
+                    changed = new int[0];
+                }
+
+                stats.recordIndex(indexNanos, journaled != null ? journaled.cardinality() : blocks.getVolume(), changed.length);
+                resetState = ResetState.APPLYING;
+            }
+
+            // Light is only updated once every block has been written, so that no position is relit twice.
+            if (cursor < changed.length) {
+                final long start = System.nanoTime();
+                cursor = process(cursor, deadline, handler::setBlocks);
+                stats.recordWrite(System.nanoTime() - start);
+                return false;
+            }
+
+            if (lightCursor < changed.length) {
+                final long start = System.nanoTime();
+                lightCursor = process(lightCursor, deadline, handler::relight);
+                stats.recordLight(System.nanoTime() - start);
+
+                if (lightCursor >= changed.length) {
+                    resetState = ResetState.FINALIZING;
+                }
+
+                return false;
+            }
+
+            resetState = ResetState.FINALIZING;
+
+            // Queued light checks were processed at the end of the last tick, so the chunks sent now are fully lit.
+            updates.send(changed);
+            entities.restore();
+            endReset(true);
+
+            if (rescan) {
+                // The arena stays disabled and the callbacks wait for the pass over the whole zone.
+                startReset(callbacks, true, false, priority);
+
+                if (draining) {
+                    finishReset();
+                }
+
+                return true;
+            }
+
+            releaseChunksIfUnpinned();
+            arena.setDisabled(false);
+            // Items dropped while the blocks were being reset
+            removeItems();
+            callbacks.forEach(Callback::call);
+            return true;
         }
 
         @Override
-        public void run() {
-            for (int y = min.getBlockY(); y <= max.getBlockY(); y++) {
-                for (int z = min.getBlockZ(); z <= max.getBlockZ(); z++) {
-                    final Block block = min.getWorld().getBlockAt(x, y, z);
-                    final Position position = new Position(block);
-                    final BlockInfo info = blocks.get(position);
-
-                    chunks.add(new ChunkLoc(block.getChunk()));
-
-                    if (info == null) {
-                        // If no stored information is available (= air) but block is not air, set to air
-                        if (block.getType() != Material.AIR) {
-                            changed.add(new Pair<>(block, new BlockInfo()));
-                        }
+        public void abort() {
+            if (reset == this) {
+                endReset(false);
+            }
+
+            cancelDiff();
+            releaseChunksIfUnpinned();
+            arena.setDisabled(false);
+            // Some changes may have been applied while others were not, so the next reset has to look at the whole zone.
+            journal.invalidate();
+        }
+
+        // Snapshots the affected chunks until the deadline, then hands the comparison over to the worker pool.
+        private void capture(final long deadline) {
+            final World world = min.getWorld();
 
-                        continue;
-                    } else if (info.matches(block)) {
-                        continue;
+            if (captured == 0) {
+                // Keeps the chunks from unloading before they are written
+                holdChunks(pending);
+            }
+
+            if (writeAll) {
+                // Nothing is compared, so the chunks only have to be loaded and held.
+                result = CompletableFuture.supplyAsync(() -> {
+                    final int[] indices = new int[blocks.getVolume()];
+
+                    for (int index = 0; index < indices.length; index++) {
+                        indices[index] = index;
                     }
 
-                    changed.add(new Pair<>(block, info));
+                    final int[] grouped = diff.groupByChunk(indices);
+                    indexNanos = System.nanoTime() - indexStart;
+                    return grouped;
+                }, extension.getWorkers());
+                return;
+            }
+
+            while (captured < pending.length) {
+                final Chunk chunk = world.getChunkAt(pending[captured], pending[captured + 1]);
+                diff.capture(chunk);
+                captured += 2;
+
+                if (System.nanoTime() >= deadline) {
+                    break;
+                }
+            }
+
+            if (captured < pending.length) {
+                return;
+            }
+
+            final List<CompletableFuture<int[]>> results = this.results = new ArrayList<>();
+
+            if (journaled != null) {
+                results.add(CompletableFuture.supplyAsync(() -> diff.diff(journaled), extension.getWorkers()));
+            } else {
+                for (int sectionY = 0; sectionY < blocks.getSectionsY(); sectionY++) {
+                    for (int sectionZ = 0; sectionZ < blocks.getSectionsZ(); sectionZ++) {
+                        for (int sectionX = 0; sectionX < blocks.getSectionsX(); sectionX++) {
+                            final int x = sectionX, y = sectionY, z = sectionZ;
+                            results.add(CompletableFuture.supplyAsync(() -> diff.diffSection(x, y, z), extension.getWorkers()));
+                        }
+                    }
                 }
             }
 
-            x++;
+            result = CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+                final IntList indices = new IntList();
+                results.forEach(future -> indices.addAll(future.join()));
+                final int[] grouped = diff.groupByChunk(indices.toArray());
+                indexNanos = System.nanoTime() - indexStart;
+                return grouped;
+            });
+        }
 
-            if (x > max.getBlockX()) {
-                cancel();
-                task = new ResetTask(onDone, changed);
-                task.runTaskTimer(api, 1L, 1L);
+        // Keeps the worker pool from diffing for a reset that was given up. Diffs already started run to the end.
+        private void cancelDiff() {
+            if (results != null) {
+                results.forEach(future -> future.cancel(false));
             }
         }
-    }
 
-    public class ResetTask extends BukkitRunnable {
+        // Passes slices of the changes starting at the cursor to the action until either the deadline or the
+        // blocks-per-tick cap is reached. At least one slice is processed per call. Returns the new cursor.
+        private int process(int cursor, final long deadline, final BiConsumer<Chunk, BlockBatch> action) {
+            final int end = Math.min(changed.length, cursor + config.getBlocksPerTick());
 
-        private final Callback onDone;
-        private final Queue<Pair<Block, BlockInfo>> changed;
+            do {
+                final int limit = Math.min(end, cursor + SLICE_SIZE);
+                forEachChunk(changed, cursor, limit, action);
+                cursor = limit;
+            } while (cursor < end && System.nanoTime() < deadline);
 
-        public ResetTask(final Callback onDone, final Queue<Pair<Block, BlockInfo>> changed) {
+            return cursor;
+        }
+    }
+
+    /**
+     * Creates the zone's contents from the world. Chunks are loaded the same way as for a reset and snapshotted on the
+     * main thread until the deadline of each tick, and entities are found with one entity scan per chunk. Blocks are
+     * then copied from the snapshots on the worker pool.
+     */
+    private class Capture implements ResetScheduler.Job {
+
+        private final SectionStore store;
+        private final IntConsumer progress;
+        private final Consumer<Throwable> onDone;
+        private final ZoneDiff diff = new ZoneDiff(handler, blocks, min, max);
+        private int[] pending;
+        private CompletableFuture<Void> loading;
+        private int captured;
+        private int reported;
+        private CompletableFuture<Void> result;
+
+        Capture(final SectionStore store, final IntConsumer progress, final Consumer<Throwable> onDone) {
+            this.store = store;
+            this.progress = progress;
             this.onDone = onDone;
-            this.changed = changed;
         }
 
         @Override
-        public void run() {
-            int count = 0;
-            Pair<Block, BlockInfo> current;
+        public boolean run(final long deadline) {
+            if (loading == null) {
+                pending = diff.getChunksToCapture(null);
+                loading = ChunkLoading.loadAsync(min.getWorld(), pending);
+            }
 
-            while ((current = changed.poll()) != null) {
-                final Block block = current.getKey();
-                final BlockInfo info = current.getValue();
-                handler.setBlockFast(block, info.getType(), info.getData());
-                count++;
+            if (!loading.isDone()) {
+                return false;
+            }
 
-                if (count >= config.getBlocksPerTick()) {
-                    return;
-                }
+            if (result == null) {
+                capture(deadline);
+                return false;
             }
 
-            cancel();
-            arena.setDisabled(false);
-            task = null;
+            if (!result.isDone()) {
+                return false;
+            }
 
-            if (config.isRemoveDroppedItems()) {
-                chunks.forEach(chunkLoc -> {
-                    final Chunk chunk = min.getWorld().getChunkAt(chunkLoc.x, chunkLoc.z);
+            capture = null;
+            releaseChunksIfUnpinned();
 
-                    for (final Entity entity : chunk.getEntities()) {
-                        if (entity instanceof Item) {
-                            entity.remove();
-                        }
-                    }
-                });
+            try {
+                result.join();
+            } catch (CompletionException ex) {
+                onDone.accept(ex.getCause());
+                return true;
             }
 
-            if (onDone != null) {
-                onDone.call();
+            // Not resolved on the worker pool with the rest, since resolving parses block data
+            blocks.resolve(handler::resolve, handler::getStateId);
+            onDone.accept(null);
+            return true;
+        }
+
+        @Override
+        public void abort() {
+            if (capture == this) {
+                capture = null;
+            }
+
+            // The zone is dropped, so its chunks are not needed anymore.
+            releaseChunks();
+
+            // Sections interned by a copy that is still running are given back once it is done.
+            if (result != null) {
+                result.thenRun(() -> blocks.release(store));
+            }
+
+            onDone.accept(new CancellationException());
+        }
+
+        private void capture(final long deadline) {
+            final World world = min.getWorld();
+
+            if (captured == 0) {
+                holdChunks(pending);
             }
+
+            while (captured < pending.length) {
+                final Chunk chunk = world.getChunkAt(pending[captured], pending[captured + 1]);
+                diff.capture(chunk);
+                entities.capture(chunk);
+                captured += 2;
+
+                if (System.nanoTime() >= deadline) {
+                    break;
+                }
+            }
+
+            final int percent = (int) (100L * captured / pending.length);
+
+            if (percent / 25 > reported && percent < 100) {
+                reported = percent / 25;
+                progress.accept(percent);
+            }
+
+            if (captured < pending.length) {
+                return;
+            }
+
+            result = CompletableFuture.runAsync(() -> {
+                diff.storeCaptured();
+                // Share the sections with zones that were built from the same blocks
+                blocks.intern(store);
+            }, extension.getWorkers());
         }
     }
-}
\ No newline at end of file
+}
@@ -2,14 +2,30 @@ package me.realized.de.arenaregen.zone;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import me.realized.de.arenaregen.ArenaRegen;
 import me.realized.de.arenaregen.config.Config;
 import me.realized.de.arenaregen.config.Lang;
 import me.realized.de.arenaregen.selection.Selection;
+import me.realized.de.arenaregen.util.ChunkLoading;
 import me.realized.de.arenaregen.util.CompatUtil;
+import me.realized.de.arenaregen.util.MainThread;
+import me.realized.de.arenaregen.zone.snapshot.SectionStore;
+import me.realized.de.arenaregen.zone.snapshot.ZoneFile;
+import me.realized.de.arenaregen.zone.snapshot.ZoneSnapshot;
 import me.realized.duels.api.Duels;
 import me.realized.duels.api.arena.Arena;
 import me.realized.duels.api.arena.ArenaManager;
@@ -18,18 +34,46 @@ import me.realized.duels.api.event.match.MatchEndEvent;
 import me.realized.duels.api.event.match.MatchStartEvent;
 import me.realized.duels.api.event.spectate.SpectateStartEvent;
 import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.entity.Item;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.block.Action;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockDispenseEvent;
 import org.bukkit.event.block.BlockExplodeEvent;
 import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockGrowEvent;
 import org.bukkit.event.block.BlockIgniteEvent;
 import org.bukkit.event.block.BlockIgniteEvent.IgniteCause;
+import org.bukkit.event.block.BlockMultiPlaceEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.BlockRedstoneEvent;
+import org.bukkit.event.block.BlockSpreadEvent;
 import org.bukkit.event.block.LeavesDecayEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
 import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.entity.ItemDespawnEvent;
+import org.bukkit.event.entity.ItemMergeEvent;
+import org.bukkit.event.entity.ItemSpawnEvent;
+import org.bukkit.event.inventory.InventoryPickupItemEvent;
+import org.bukkit.event.player.PlayerBucketEmptyEvent;
+import org.bukkit.event.player.PlayerBucketFillEvent;
+import org.bukkit.event.player.PlayerDropItemEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerPickupItemEvent;
+import org.bukkit.event.world.StructureGrowEvent;
+import org.bukkit.scheduler.BukkitTask;
 
 public class ResetZoneManager {
 
@@ -39,8 +83,17 @@ public class ResetZoneManager {
     private final Config config;
     private final Lang lang;
     private final File folder;
+    private final ResetScheduler scheduler;
+    private final SectionStore sections;
 
     private final Map<String, ResetZone> zones = new HashMap<>();
+    private final Map<String, PendingLoad> loading = new HashMap<>();
+    private final Map<String, ResetZone> capturing = new HashMap<>();
+    private final ZoneIndex index = new ZoneIndex();
+    // Last pending write or delete of each zone file. Entries are removed by the worker thread once done.
+    private final Map<String, CompletableFuture<Void>> saving = new ConcurrentHashMap<>();
+    private final ListenerStats listenerStats = new ListenerStats();
+    private BukkitTask ticketTask;
 
     public ResetZoneManager(final ArenaRegen extension, final Duels api) {
         this.extension = extension;
@@ -49,76 +102,386 @@ public class ResetZoneManager {
         this.config = extension.getConfiguration();
         this.lang = extension.getLang();
         this.folder = new File(extension.getDataFolder(), "zones");
+        this.scheduler = new ResetScheduler(extension);
+        this.sections = new SectionStore(new File(folder, "sections"));
+        scheduler.runTaskTimer(api, 1L, 1L);
         api.registerListener(new ResetZoneListener());
 
+        if (config.isChunkTickets() && ChunkLoading.hasTickets()) {
+            this.ticketTask = api.getServer().getScheduler().runTaskTimer(api, this::releaseIdleChunks, 20L * 30, 20L * 30);
+        }
+
         if (CompatUtil.hasBlockExplodeEvent()) {
             api.registerListener(new BlockExplodeListener());
         }
 
+        if (config.isRemoveDroppedItems()) {
+            api.registerListener(new ItemListener());
+            api.registerListener(CompatUtil.hasEntityPickupItemEvent() ? new EntityPickupListener() : new PlayerPickupListener());
+        }
+
+        if (config.isTrackChanges()) {
+            api.registerListener(new ChangeListener());
+
+            if (CompatUtil.hasBlockExplodeEvent()) {
+                api.registerListener(new BlockExplodeChangeListener());
+            }
+        }
+
         if (!folder.exists()) {
             folder.mkdir();
         }
 
-        final File[] files = folder.listFiles((dir, name) -> name.endsWith(".yml"));
+        final File[] files = folder.listFiles((dir, name) -> name.endsWith(ZoneFile.EXTENSION) || name.endsWith(ZoneFile.LEGACY_EXTENSION));
 
         if (files != null) {
+            final Set<String> names = new LinkedHashSet<>();
+            boolean deleted = false;
+
             for (final File file : files) {
-                final String name = file.getName().replace(".yml", "");
+                final String fileName = file.getName();
+                names.add(fileName.substring(0, fileName.lastIndexOf('.')));
+            }
+
+            for (final String name : names) {
                 final Arena arena = arenaManager.get(name);
 
                 if (arena == null) {
-                    file.delete();
+                    new File(folder, name + ZoneFile.EXTENSION).delete();
+                    new File(folder, name + ZoneFile.LEGACY_EXTENSION).delete();
+                    deleted = true;
                     continue;
                 }
 
-                try {
-                    zones.put(name, new ResetZone(extension, api, arena, file));
-                } catch (Exception ex) {
-                    extension.error("Could not load reset zone '" + name + "'!", ex);
+                load(name, arena);
+            }
+
+            if (deleted) {
+                CompletableFuture.runAsync(this::sweepSections, extension.getWorkers());
+            }
+        }
+    }
+
+    // Reads and decodes the zone file on a worker thread. The result is bound to its world and arena on the main thread.
+    private void load(final String name, final Arena arena) {
+        final PendingLoad pending = new PendingLoad(arena);
+        loading.put(name, pending);
+
+        // Keep Duels from starting matches in the arena until its zone is ready.
+        arena.setDisabled(true);
+
+        final CompletableFuture<ZoneSnapshot> reading = CompletableFuture.supplyAsync(() -> {
+            try {
+                return read(name);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, extension.getWorkers());
+
+        MainThread.handoff(api, reading).whenComplete((result, error) -> {
+            if (loading.get(name) != pending) {
+                if (result != null) {
+                    result.getBlocks().release(sections);
                 }
+
+                return;
+            }
+
+            loading.remove(name);
+            arena.setDisabled(pending.disabled);
+
+            if (error != null) {
+                extension.error("Could not load reset zone '" + name + "'!", error instanceof CompletionException ? error.getCause() : error);
+                pending.future.completeExceptionally(error);
+                return;
+            }
+
+            try {
+                final ResetZone zone = new ResetZone(extension, api, scheduler, arena, folder, result);
+                zones.put(name, zone);
+                index.add(zone);
+                pending.future.complete(zone);
+            } catch (Exception ex) {
+                extension.error("Could not load reset zone '" + name + "'!", ex);
+                result.getBlocks().release(sections);
+                pending.future.completeExceptionally(ex);
+            }
+        });
+    }
+
+    private ZoneSnapshot read(final String name) throws IOException {
+        final File file = new File(folder, name + ZoneFile.EXTENSION);
+        final File legacyFile = new File(folder, name + ZoneFile.LEGACY_EXTENSION);
+
+        if (file.exists()) {
+            // Leftover from a migration that was interrupted after the binary file was written.
+            if (legacyFile.exists()) {
+                legacyFile.delete();
             }
+
+            return ZoneFile.read(file, sections);
+        }
+
+        final ZoneSnapshot snapshot = ZoneFile.readLegacy(legacyFile, sections);
+        migrate(name, file, snapshot);
+        legacyFile.delete();
+        return snapshot;
+    }
+
+    private void migrate(final String name, final File file, final ZoneSnapshot snapshot) throws IOException {
+        try {
+            ZoneFile.write(file, snapshot, sections);
+        } catch (IOException ex) {
+            snapshot.getBlocks().release(sections);
+            throw ex;
+        }
+
+        extension.info("Migrated reset zone '" + name + "' to the current zone format.");
+    }
+
+    // Deletes the section files no zone file refers to anymore. Zone files are only read here, so this has to run after
+    // the deletes that made sections unused.
+    private void sweepSections() {
+        synchronized (sections) {
+            final File[] files = folder.listFiles((dir, name) -> name.endsWith(ZoneFile.EXTENSION));
+            final Set<Long> referenced = new HashSet<>();
+
+            if (files != null) {
+                for (final File file : files) {
+                    try {
+                        referenced.addAll(ZoneFile.readSectionHashes(file));
+                    } catch (IOException ex) {
+                        extension.error("Could not read reset zone file '" + file.getName() + "', unused sections were kept.", ex);
+                        return;
+                    }
+                }
+            }
+
+            sections.sweep(referenced);
         }
     }
 
+    // Only zones with unsaved changes are written. Waits for every pending write, so the worker pool must still be running.
+    // Chunk tickets are given back as well, so that the chunks can unload while the extension is disabled.
     public void save() {
+        loading.values().forEach(pending -> pending.arena.setDisabled(pending.disabled));
+        loading.clear();
+        new ArrayList<>(capturing.values()).forEach(ResetZone::cancelCapture);
+
         zones.values().forEach(zone -> {
-            if (zone.isResetting()) {
-                zone.getArena().setDisabled(false);
-                zone.getTask().cancel();
-                zone.resetInstant();
+            // Resets in progress are completed instead of leaving the arenas half reset.
+            zone.finishReset();
+            save(zone);
+            zone.releaseChunks();
+        });
+
+        if (ticketTask != null) {
+            ticketTask.cancel();
+        }
+
+        for (final CompletableFuture<Void> future : saving.values()) {
+            try {
+                future.join();
+            } catch (CompletionException ignored) {
+                // Already logged by the failed task
             }
+        }
+    }
+
+    // Removes the chunk tickets of zones that were not used by a match or reset for chunk-ticket-idle-time seconds.
+    private void releaseIdleChunks() {
+        final long now = System.currentTimeMillis();
+        final long idleMillis = config.getChunkTicketIdleTime() * 1000L;
+
+        for (final ResetZone zone : zones.values()) {
+            if (zone.isIdle(now, idleMillis)) {
+                zone.releaseChunks();
+            }
+        }
+    }
+
+    // Writes a copy of the zone on a worker thread if the zone has changed since it was last saved.
+    private void save(final ResetZone zone) {
+        if (!zone.isDirty()) {
+            return;
+        }
 
+        final ZoneSnapshot snapshot = zone.snapshot();
+        submitFileTask(zone.getName(), () -> {
             try {
-                zone.save();
+                zone.write(snapshot, sections);
             } catch (IOException ex) {
                 extension.error("Could not save reset zone '" + zone.getName() + "'!", ex);
+                zone.markDirty();
+                throw new CompletionException(ex);
             }
         });
     }
 
+    // Tasks on the file of the same zone run one after another in the order they were submitted, so that a delete can
+    // never be overtaken by an earlier write.
+    private void submitFileTask(final String name, final Runnable task) {
+        final CompletableFuture<Void> previous = saving.getOrDefault(name, CompletableFuture.completedFuture(null));
+        final CompletableFuture<Void> next = previous.handle((result, error) -> null).thenRunAsync(task, extension.getWorkers());
+        saving.put(name, next);
+        next.whenComplete((result, error) -> saving.remove(name, next));
+    }
+
+    public ResetScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public ListenerStats getListenerStats() {
+        return listenerStats;
+    }
+
     public ResetZone get(final String name) {
         return zones.get(name);
     }
 
-    public boolean create(final Arena arena, final Selection selection) {
-        if (zones.containsKey(arena.getName())) {
+    /**
+     * @return true if the zone is being loaded from its file or captured from the world.
+     */
+    public boolean isLoading(final String name) {
+        return loading.containsKey(name) || capturing.containsKey(name);
+    }
+
+    /**
+     * Starts capturing a new zone from the world. The zone is only registered once the capture is complete, and its
+     * arena is disabled until then.
+     *
+     * @param progress Called with the percentage of chunks captured so far.
+     * @param onDone Called with the zone once it is registered, or with null if the capture failed. Not called if the
+     * capture is stopped by removing the zone or by shutdown.
+     * @return false if the arena already has a zone.
+     */
+    public boolean create(final Arena arena, final Selection selection, final IntConsumer progress, final Consumer<ResetZone> onDone) {
+        final String name = arena.getName();
+
+        if (zones.containsKey(name) || isLoading(name)) {
             return false;
         }
 
-        final ResetZone zone = new ResetZone(extension, api, arena, folder, selection.getFirst(), selection.getSecond());
-        zone.loadBlocks();
-        zones.put(arena.getName(), zone);
+        final ResetZone zone = new ResetZone(extension, api, scheduler, arena, folder, selection.getFirst(), selection.getSecond());
+        final boolean disabled = arena.isDisabled();
+        capturing.put(name, zone);
+        arena.setDisabled(true);
+
+        zone.capture(sections, progress, error -> {
+            capturing.remove(name);
+            arena.setDisabled(disabled);
+
+            if (error instanceof CancellationException) {
+                return;
+            }
+
+            if (error != null) {
+                extension.error("Could not create reset zone '" + name + "'!", error);
+                onDone.accept(null);
+                return;
+            }
+
+            zones.put(name, zone);
+            index.add(zone);
+            save(zone);
+            onDone.accept(zone);
+        });
         return true;
     }
 
+    /**
+     * Creates a zone for another arena built from the same map as the template zone, placed at the given offset from
+     * it. The new zone shares its blocks with the template in memory and on disk, so nothing is captured from the world.
+     * Its blocks are written right away to build the map at its position, without comparing them against the world.
+     * Callers check {@link #overlaps(ResetZone, int, int, int)} and whether the arena is in use first.
+     *
+     * @return The new zone, or null if the arena already has a zone.
+     */
+    public ResetZone copy(final ResetZone template, final Arena arena, final int dx, final int dy, final int dz) {
+        final String name = arena.getName();
+
+        if (zones.containsKey(name) || isLoading(name)) {
+            return null;
+        }
+
+        final ResetZone zone = new ResetZone(extension, api, scheduler, arena, folder, template.copy(dx, dy, dz, sections));
+        zones.put(name, zone);
+        index.add(zone);
+        zone.markDirty();
+        save(zone);
+        zone.build(null);
+        return zone;
+    }
+
+    /**
+     * @return true if the template moved by the given offset would overlap an existing zone, including the template
+     * itself and zones that are still being captured.
+     */
+    public boolean overlaps(final ResetZone template, final int dx, final int dy, final int dz) {
+        final World world = template.getMin().getWorld();
+        final int minX = template.getMin().getBlockX() + dx, minY = template.getMin().getBlockY() + dy, minZ = template.getMin().getBlockZ() + dz;
+        final int maxX = template.getMax().getBlockX() + dx, maxY = template.getMax().getBlockY() + dy, maxZ = template.getMax().getBlockZ() + dz;
+
+        for (final ResetZone zone : capturing.values()) {
+            if (zone.intersects(world, minX, minY, minZ, maxX, maxY, maxZ)) {
+                return true;
+            }
+        }
+
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                for (final ResetZone zone : index.get(world, chunkX, chunkZ)) {
+                    if (zone.intersects(world, minX, minY, minZ, maxX, maxY, maxZ)) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
     public boolean remove(final String name) {
+        final ResetZone captured = capturing.get(name);
+
+        if (captured != null) {
+            captured.cancelCapture();
+            return true;
+        }
+
+        final PendingLoad pending = loading.get(name);
+
+        if (pending != null) {
+            pending.future.whenComplete((zone, error) -> {
+                if (zone != null) {
+                    remove(name);
+                    return;
+                }
+
+                // The zone could not be loaded, so only its file is left to delete.
+                submitFileTask(name, () -> {
+                    new File(folder, name + ZoneFile.EXTENSION).delete();
+                    new File(folder, name + ZoneFile.LEGACY_EXTENSION).delete();
+                    sweepSections();
+                });
+            });
+            return true;
+        }
+
         final ResetZone zone = zones.remove(name);
 
         if (zone == null) {
             return false;
         }
 
-        zone.delete();
+        index.remove(zone);
+        zone.cancelReset();
+        zone.releaseChunks();
+        zone.release(sections);
+        submitFileTask(name, () -> {
+            zone.delete();
+            sweepSections();
+        });
         return true;
     }
 
@@ -126,8 +489,130 @@ public class ResetZoneManager {
         return zones.values();
     }
 
+    // Positions outside of every zone only cost a lookup in the index.
+    private boolean isCached(final Block block) {
+        for (final ResetZone zone : index.get(block.getWorld(), block.getX() >> 4, block.getZ() >> 4)) {
+            if (zone.isCached(block)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private ResetZone getZoneAt(final World world, final int x, final int y, final int z) {
+        for (final ResetZone zone : index.get(world, x >> 4, z >> 4)) {
+            if (zone.contains(world, x, y, z)) {
+                return zone;
+            }
+        }
+
+        return null;
+    }
+
+    // Removes the blocks that belong to a zone's snapshot from an explosion, so that only blocks placed during the match
+    // are destroyed. The list is compacted in place in a single pass. Consecutive blocks of an explosion are usually in
+    // the same zone, so the zone is only looked up again once a block falls outside of it.
+    private void filterExplosion(final List<Block> blocks) {
+        ResetZone zone = null;
+        int kept = 0;
+
+        for (int i = 0; i < blocks.size(); i++) {
+            final Block block = blocks.get(i);
+            final World world = block.getWorld();
+            final int x = block.getX(), y = block.getY(), z = block.getZ();
+
+            if (zone == null || !zone.contains(world, x, y, z)) {
+                zone = getZoneAt(world, x, y, z);
+            }
+
+            if (zone != null && zone.isCached(block)) {
+                continue;
+            }
+
+            blocks.set(kept++, block);
+        }
+
+        for (int i = blocks.size() - 1; i >= kept; i--) {
+            blocks.remove(i);
+        }
+    }
+
+    private void recordChange(final World world, final int x, final int y, final int z) {
+        for (final ResetZone zone : index.get(world, x >> 4, z >> 4)) {
+            zone.recordChange(world, x, y, z);
+        }
+    }
+
+    private void recordChange(final Block block) {
+        recordChange(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    // Also records the neighbours, which may change along with the block (attached blocks, door and bed halves, fluids).
+    private void recordChangeAround(final World world, final int x, final int y, final int z) {
+        recordChange(world, x, y, z);
+        recordChange(world, x + 1, y, z);
+        recordChange(world, x - 1, y, z);
+        recordChange(world, x, y + 1, z);
+        recordChange(world, x, y - 1, z);
+        recordChange(world, x, y, z + 1);
+        recordChange(world, x, y, z - 1);
+    }
+
+    private void recordChangeAround(final Block block) {
+        recordChangeAround(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    private void recordChangeAround(final List<Block> blocks) {
+        for (final Block block : blocks) {
+            recordChangeAround(block);
+        }
+    }
+
+    private void trackItem(final Item item) {
+        final ResetZone zone = getZoneAt(item.getWorld(), item.getLocation().getBlockX(), item.getLocation().getBlockY(), item.getLocation().getBlockZ());
+
+        if (zone != null) {
+            zone.trackItem(item);
+        }
+    }
+
+    // Items that moved out of their zone are not found here. They stay tracked until the zone's items are removed, which
+    // skips items that no longer exist.
+    private void untrackItem(final Item item) {
+        final ResetZone zone = getZoneAt(item.getWorld(), item.getLocation().getBlockX(), item.getLocation().getBlockY(), item.getLocation().getBlockZ());
+
+        if (zone != null) {
+            zone.untrackItem(item);
+        }
+    }
+
+    // Queued players get the next free arena, so resets are sped up while anyone is waiting for a match.
+    private boolean hasQueuedPlayers() {
+        return api.getQueueManager().getQueues().stream().anyMatch(queue -> !queue.getQueuedPlayers().isEmpty());
+    }
+
+    private static class PendingLoad {
+
+        private final Arena arena;
+        private final boolean disabled;
+        private final CompletableFuture<ResetZone> future = new CompletableFuture<>();
+
+        PendingLoad(final Arena arena) {
+            this.arena = arena;
+            this.disabled = arena.isDisabled();
+        }
+    }
+
     private class ResetZoneListener implements Listener {
 
+        private final ListenerStats.Counter breakCounter = listenerStats.counter("block-break");
+        private final ListenerStats.Counter fadeCounter = listenerStats.counter("block-fade");
+        private final ListenerStats.Counter burnCounter = listenerStats.counter("block-burn");
+        private final ListenerStats.Counter entityExplodeCounter = listenerStats.counter("entity-explode");
+        private final ListenerStats.Counter igniteCounter = listenerStats.counter("block-ignite");
+        private final ListenerStats.Counter decayCounter = listenerStats.counter("leaves-decay");
+
         @EventHandler
         public void on(final MatchStartEvent event) {
             final Arena arena = event.getMatch().getArena();
@@ -137,6 +622,10 @@ public class ResetZoneManager {
                 return;
             }
 
+            if (config.isChunkTickets()) {
+                zone.holdChunks();
+            }
+
             zone.refreshChunks(event.getPlayers());
         }
 
@@ -155,13 +644,27 @@ public class ResetZoneManager {
         @EventHandler
         public void on(final MatchEndEvent event) {
             final Arena arena = event.getMatch().getArena();
+            final PendingLoad pending = loading.get(arena.getName());
+
+            final ResetPriority priority = hasQueuedPlayers() ? ResetPriority.QUEUED : ResetPriority.MATCH_END;
+
+            if (pending != null) {
+                pending.future.thenAccept(zone -> zone.reset(null, false, priority));
+                return;
+            }
+
             final ResetZone zone = get(arena.getName());
 
             if (zone == null) {
                 return;
             }
 
-            zone.reset(null);
+            // Items do not depend on the blocks, so they are cleared right away instead of once the reset is done.
+            if (config.isRemoveDroppedItems()) {
+                zone.removeItems();
+            }
+
+            zone.reset(null, false, priority);
         }
 
         @EventHandler
@@ -171,80 +674,308 @@ public class ResetZoneManager {
 
         @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
         public void on(final BlockBreakEvent event) {
-            final Player player = event.getPlayer();
+            final long start = System.nanoTime();
 
-            if (config.isAllowArenaBlockBreak()
-                    || !arenaManager.isInMatch(player)
-                    || zones.values().stream().noneMatch(zone -> zone.isCached(event.getBlock()))) {
-                return;
-            }
+            try {
+                final Player player = event.getPlayer();
+
+                if (config.isAllowArenaBlockBreak()
+                        || !arenaManager.isInMatch(player)
+                        || !isCached(event.getBlock())) {
+                    return;
+                }
 
-            event.setCancelled(true);
-            lang.sendMessage(player, "ERROR.prevent.arena-block-break");
+                event.setCancelled(true);
+                lang.sendMessage(player, "ERROR.prevent.arena-block-break");
+            } finally {
+                breakCounter.record(start);
+            }
         }
 
         @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
         public void on(final BlockFadeEvent event) {
-            if (!config.isPreventBlockMelt() || zones.values().stream().noneMatch(zone -> zone.isCached(event.getBlock()))) {
-                return;
-            }
+            final long start = System.nanoTime();
 
-            final Material changedType = event.getNewState().getType();
+            try {
+                if (!config.isPreventBlockMelt() || !isCached(event.getBlock())) {
+                    return;
+                }
 
-            if (!(changedType == Material.AIR || changedType.name().contains("WATER"))) {
-                return;
-            }
+                final Material changedType = event.getNewState().getType();
+
+                if (!(changedType == Material.AIR || changedType.name().contains("WATER"))) {
+                    return;
+                }
 
-            event.setCancelled(true);
+                event.setCancelled(true);
+            } finally {
+                fadeCounter.record(start);
+            }
         }
 
         @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
         public void on(final BlockBurnEvent event) {
-            if (!config.isPreventBlockBurn() || zones.values().stream().noneMatch(zone -> zone.isCached(event.getBlock()))) {
-                return;
-            }
+            final long start = System.nanoTime();
+
+            try {
+                if (!config.isPreventBlockBurn() || !isCached(event.getBlock())) {
+                    return;
+                }
 
-            event.setCancelled(true);
+                event.setCancelled(true);
+            } finally {
+                burnCounter.record(start);
+            }
         }
 
         @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
         public void on(final EntityExplodeEvent event) {
-            if (!config.isPreventBlockExplode() || event.blockList().stream().allMatch(block -> zones.values().stream().noneMatch(zone -> zone.isCached(block)))) {
-                return;
-            }
+            final long start = System.nanoTime();
 
-            event.setCancelled(true);
-        }
+            try {
+                if (!config.isPreventBlockExplode()) {
+                    return;
+                }
 
+                filterExplosion(event.blockList());
+            } finally {
+                entityExplodeCounter.record(start);
+            }
+        }
 
         @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
         public void on(final BlockIgniteEvent event) {
-            if (!config.isPreventFireSpread() || event.getCause() != IgniteCause.SPREAD || zones.values().stream().noneMatch(zone -> zone.isCached(event.getBlock()))) {
-                return;
-            }
+            final long start = System.nanoTime();
 
-            event.setCancelled(true);
+            try {
+                if (!config.isPreventFireSpread() || event.getCause() != IgniteCause.SPREAD || !isCached(event.getBlock())) {
+                    return;
+                }
+
+                event.setCancelled(true);
+            } finally {
+                igniteCounter.record(start);
+            }
         }
 
         @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
         public void on(final LeavesDecayEvent event) {
-            if (!config.isPreventLeafDecay() || zones.values().stream().noneMatch(zone -> zone.isCached(event.getBlock()))) {
-                return;
-            }
+            final long start = System.nanoTime();
+
+            try {
+                if (!config.isPreventLeafDecay() || !isCached(event.getBlock())) {
+                    return;
+                }
 
-            event.setCancelled(true);
+                event.setCancelled(true);
+            } finally {
+                decayCounter.record(start);
+            }
         }
     }
 
     private class BlockExplodeListener implements Listener {
 
+        private final ListenerStats.Counter blockExplodeCounter = listenerStats.counter("block-explode");
+
         @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
         public void on(final BlockExplodeEvent event) {
-            if (!config.isPreventBlockExplode() || event.blockList().stream().allMatch(block -> zones.values().stream().noneMatch(zone -> zone.isCached(block)))) {
+            final long start = System.nanoTime();
+
+            try {
+                if (!config.isPreventBlockExplode()) {
+                    return;
+                }
+
+                filterExplosion(event.blockList());
+            } finally {
+                blockExplodeCounter.record(start);
+            }
+        }
+    }
+
+    // Feeds the change journals of the zones. Runs last so only changes that actually happen are recorded.
+    private class ChangeListener implements Listener {
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final BlockPlaceEvent event) {
+            recordChangeAround(event.getBlock());
+
+            if (event instanceof BlockMultiPlaceEvent) {
+                for (final BlockState state : ((BlockMultiPlaceEvent) event).getReplacedBlockStates()) {
+                    recordChangeAround(state.getWorld(), state.getX(), state.getY(), state.getZ());
+                }
+            }
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final BlockBreakEvent event) {
+            recordChangeAround(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final BlockBurnEvent event) {
+            recordChangeAround(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final BlockFadeEvent event) {
+            recordChange(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final BlockGrowEvent event) {
+            recordChange(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final BlockFormEvent event) {
+            recordChange(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final BlockSpreadEvent event) {
+            recordChange(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final BlockFromToEvent event) {
+            recordChange(event.getToBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final BlockPistonExtendEvent event) {
+            recordChangeAround(event.getBlock());
+            recordChangeAround(event.getBlocks());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final BlockPistonRetractEvent event) {
+            recordChangeAround(event.getBlock());
+            recordChangeAround(event.getBlocks());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final BlockIgniteEvent event) {
+            recordChange(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final LeavesDecayEvent event) {
+            recordChange(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void on(final BlockRedstoneEvent event) {
+            recordChange(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final EntityExplodeEvent event) {
+            recordChangeAround(event.blockList());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final EntityChangeBlockEvent event) {
+            recordChangeAround(event.getBlock());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final StructureGrowEvent event) {
+            for (final BlockState state : event.getBlocks()) {
+                recordChange(state.getWorld(), state.getX(), state.getY(), state.getZ());
+            }
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final PlayerBucketEmptyEvent event) {
+            recordChangeAround(event.getBlockClicked());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final PlayerBucketFillEvent event) {
+            recordChangeAround(event.getBlockClicked());
+        }
+
+        // Doors, trapdoors, levers, pressure plates and similar blocks change state when used
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final PlayerInteractEvent event) {
+            if (!event.hasBlock() || (event.getAction() != Action.RIGHT_CLICK_BLOCK && event.getAction() != Action.PHYSICAL)) {
                 return;
             }
 
-            event.setCancelled(true);
+            recordChangeAround(event.getClickedBlock());
+        }
+
+        // Dispensers can place fluids and blocks without firing any of the events above
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final BlockDispenseEvent event) {
+            final Block block = event.getBlock();
+
+            for (final ResetZone zone : index.get(block.getWorld(), block.getX() >> 4, block.getZ() >> 4)) {
+                if (zone.contains(block.getWorld(), block.getX(), block.getY(), block.getZ())) {
+                    zone.invalidateChanges();
+                }
+            }
+        }
+    }
+
+    private class BlockExplodeChangeListener implements Listener {
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final BlockExplodeEvent event) {
+            recordChangeAround(event.blockList());
+        }
+    }
+
+    // Keeps the item registries of the zones up to date, so that removing items never has to scan entities.
+    private class ItemListener implements Listener {
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final ItemSpawnEvent event) {
+            trackItem(event.getEntity());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final PlayerDropItemEvent event) {
+            trackItem(event.getItemDrop());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final ItemMergeEvent event) {
+            untrackItem(event.getEntity());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final ItemDespawnEvent event) {
+            untrackItem(event.getEntity());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final InventoryPickupItemEvent event) {
+            untrackItem(event.getItem());
+        }
+    }
+
+    private class EntityPickupListener implements Listener {
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final EntityPickupItemEvent event) {
+            // Items that were only partly picked up stay on the ground and remain tracked.
+            if (event.getRemaining() <= 0) {
+                untrackItem(event.getItem());
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private class PlayerPickupListener implements Listener {
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void on(final PlayerPickupItemEvent event) {
+            if (event.getRemaining() <= 0) {
+                untrackItem(event.getItem());
+            }
         }
     }
-}
\ No newline at end of file
+}
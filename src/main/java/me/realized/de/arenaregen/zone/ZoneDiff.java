@@ -0,0 +1,303 @@
+package me.realized.de.arenaregen.zone;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import me.realized.de.arenaregen.nms.NMS;
+import me.realized.de.arenaregen.util.BlockInfo;
+import me.realized.de.arenaregen.util.IntList;
+import me.realized.de.arenaregen.zone.snapshot.BlockStore;
+import me.realized.de.arenaregen.zone.snapshot.SectionData;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+/**
+ * Compares snapshots of a zone's chunks against its stored blocks. Snapshots are captured on the main thread, after
+ * which the diff methods only read immutable data and may be called from worker threads.
+ */
+class ZoneDiff {
+
+    private static final int[] NONE = new int[0];
+    private static final int[] UNREADABLE = new int[0];
+    // 1.17+, worlds start at y = 0 before. Not looked up with ReflectionUtil, which needs a running server.
+    private static final Method GET_MIN_HEIGHT = getMinHeightMethod();
+
+    private final NMS handler;
+    private final BlockStore blocks;
+    private final int minX, minY, minZ;
+    // Lowest y of the world, where the chunk section indices of snapshots start
+    private final int minHeight;
+    private final int sectionsPerChunk;
+    private final int minChunkX, minChunkZ, maxChunkX, maxChunkZ;
+    private final ChunkSnapshot[] snapshots;
+    // State ids of the sections of the captured chunks, read when first compared. Workers diffing sections next to each
+    // other may read the same chunk section at the same time, which only costs a second read.
+    private final AtomicReferenceArray<int[]> stateIds;
+
+    ZoneDiff(final NMS handler, final BlockStore blocks, final Location min, final Location max) {
+        this.handler = handler;
+        this.blocks = blocks;
+        this.minX = min.getBlockX();
+        this.minY = min.getBlockY();
+        this.minZ = min.getBlockZ();
+        this.minHeight = getMinHeight(min.getWorld());
+        this.minChunkX = minX >> 4;
+        this.minChunkZ = minZ >> 4;
+        this.maxChunkX = max.getBlockX() >> 4;
+        this.maxChunkZ = max.getBlockZ() >> 4;
+        this.snapshots = new ChunkSnapshot[(maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1)];
+        this.sectionsPerChunk = (min.getWorld().getMaxHeight() - minHeight) >> 4;
+        this.stateIds = new AtomicReferenceArray<>(snapshots.length * sectionsPerChunk);
+    }
+
+    /**
+     * @param positions Positions that will be diffed, or null if the whole zone will be diffed.
+     * @return Coordinates of the chunks to capture as (x, z) pairs.
+     */
+    int[] getChunksToCapture(final BitSet positions) {
+        final boolean[] needed = new boolean[snapshots.length];
+
+        if (positions == null) {
+            Arrays.fill(needed, true);
+        } else {
+            for (int index = positions.nextSetBit(0); index >= 0; index = positions.nextSetBit(index + 1)) {
+                needed[chunkOf(index)] = true;
+            }
+        }
+
+        final IntList result = new IntList();
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                if (needed[chunkIndex(chunkX, chunkZ)]) {
+                    result.add(chunkX);
+                    result.add(chunkZ);
+                }
+            }
+        }
+
+        return result.toArray();
+    }
+
+    void capture(final Chunk chunk) {
+        final int index = chunkIndex(chunk.getX(), chunk.getZ());
+        snapshots[index] = chunk.getChunkSnapshot(false, false, false);
+
+        for (int chunkY = 0; chunkY < sectionsPerChunk; chunkY++) {
+            stateIds.set(index * sectionsPerChunk + chunkY, null);
+        }
+    }
+
+    /**
+     * @return Indices of the positions in the given section that differ from the stored blocks. The chunks covering the
+     * section must have been captured. Air sections are skipped if the world is empty there. Otherwise the ids of the
+     * server's states are compared where the handler can read them from the snapshots, and the blocks are compared
+     * through the API if not.
+     */
+    int[] diffSection(final int sectionX, final int sectionY, final int sectionZ) {
+        final int startX = sectionX * BlockStore.SECTION_SIZE, endX = Math.min(startX + BlockStore.SECTION_SIZE, blocks.getSizeX());
+        final int startY = sectionY * BlockStore.SECTION_SIZE, endY = Math.min(startY + BlockStore.SECTION_SIZE, blocks.getSizeY());
+        final int startZ = sectionZ * BlockStore.SECTION_SIZE, endZ = Math.min(startZ + BlockStore.SECTION_SIZE, blocks.getSizeZ());
+        final SectionData section = blocks.getSection((sectionY * blocks.getSectionsZ() + sectionZ) * blocks.getSectionsX() + sectionX);
+
+        if (section == null && isEmpty(startX, endX, startY, endY, startZ, endZ)) {
+            return NONE;
+        }
+
+        final int[] states = section != null ? section.getPalette().getStateIds() : null;
+
+        if (section == null || states != null) {
+            final int[] changed = diffStates(section, states, startX, endX, startY, endY, startZ, endZ);
+
+            if (changed != null) {
+                return changed;
+            }
+        }
+
+        final IntList changed = new IntList();
+
+        for (int x = startX; x < endX; x++) {
+            for (int z = startZ; z < endZ; z++) {
+                final int worldX = minX + x, worldZ = minZ + z;
+                final ChunkSnapshot snapshot = snapshots[chunkIndex(worldX >> 4, worldZ >> 4)];
+
+                for (int y = startY; y < endY; y++) {
+                    if (!blocks.get(x, y, z).matches(snapshot, worldX & 15, minY + y, worldZ & 15)) {
+                        changed.add(blocks.toIndex(x, y, z));
+                    }
+                }
+            }
+        }
+
+        return changed.toArray();
+    }
+
+    // Whether every chunk section overlapping the given zone-local bounds only contains air. Air variants such as cave
+    // air count as air here, unlike in the comparison of single blocks.
+    private boolean isEmpty(final int startX, final int endX, final int startY, final int endY, final int startZ, final int endZ) {
+        final int fromY = (minY + startY - minHeight) >> 4, toY = (minY + endY - 1 - minHeight) >> 4;
+
+        for (int chunkX = (minX + startX) >> 4; chunkX <= (minX + endX - 1) >> 4; chunkX++) {
+            for (int chunkZ = (minZ + startZ) >> 4; chunkZ <= (minZ + endZ - 1) >> 4; chunkZ++) {
+                final ChunkSnapshot snapshot = snapshots[chunkIndex(chunkX, chunkZ)];
+
+                for (int chunkY = fromY; chunkY <= toY; chunkY++) {
+                    if (!snapshot.isSectionEmpty(chunkY)) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // Compares the state ids of the world at the section with the given zone-local bounds against the stored section's,
+    // or against air if the section is null. Ids are equal exactly when the states are, so unlike a hash this never
+    // misses a change. Returns null if the handler cannot read the ids of a captured chunk section.
+    private int[] diffStates(final SectionData section, final int[] states, final int startX, final int endX, final int startY, final int endY, final int startZ, final int endZ) {
+        final int air = blocks.getAirStateId();
+        final IntList changed = new IntList();
+
+        for (int x = startX; x < endX; x++) {
+            for (int z = startZ; z < endZ; z++) {
+                final int worldX = minX + x, worldZ = minZ + z;
+                final int chunk = chunkIndex(worldX >> 4, worldZ >> 4);
+                int[] ids = null;
+
+                for (int y = startY; y < endY; y++) {
+                    final int height = minY + y - minHeight;
+
+                    if (ids == null || (height & 15) == 0) {
+                        if ((ids = getStateIds(chunk, height >> 4)) == null) {
+                            return null;
+                        }
+                    }
+
+                    final int stored = section != null ? states[section.getId((y - startY) << 8 | (z - startZ) << 4 | x - startX)] : air;
+
+                    if (ids[(height & 15) << 8 | (worldZ & 15) << 4 | worldX & 15] != stored) {
+                        changed.add(blocks.toIndex(x, y, z));
+                    }
+                }
+            }
+        }
+
+        return changed.toArray();
+    }
+
+    private int[] getStateIds(final int chunk, final int chunkY) {
+        if (chunkY < 0 || chunkY >= sectionsPerChunk) {
+            return null;
+        }
+
+        final int slot = chunk * sectionsPerChunk + chunkY;
+        int[] ids = stateIds.get(slot);
+
+        if (ids == null) {
+            final int[] read = new int[BlockStore.SECTION_VOLUME];
+            ids = handler.readStateIds(snapshots[chunk], chunkY, read) ? read : UNREADABLE;
+            stateIds.set(slot, ids);
+        }
+
+        return ids != UNREADABLE ? ids : null;
+    }
+
+    /**
+     * @return The given positions that differ from the stored blocks. The chunks containing the positions must have been
+     * captured.
+     */
+    int[] diff(final BitSet positions) {
+        final IntList changed = new IntList();
+
+        for (int index = positions.nextSetBit(0); index >= 0; index = positions.nextSetBit(index + 1)) {
+            final int x = blocks.getX(index), y = blocks.getY(index), z = blocks.getZ(index);
+            final int worldX = minX + x, worldZ = minZ + z;
+            final ChunkSnapshot snapshot = snapshots[chunkIndex(worldX >> 4, worldZ >> 4)];
+
+            if (!blocks.get(x, y, z).matches(snapshot, worldX & 15, minY + y, worldZ & 15)) {
+                changed.add(index);
+            }
+        }
+
+        return changed.toArray();
+    }
+
+    /**
+     * Stores the captured blocks as the zone's blocks, used when the zone is created. Every chunk of the zone must have
+     * been captured.
+     */
+    void storeCaptured() {
+        for (int x = 0; x < blocks.getSizeX(); x++) {
+            for (int z = 0; z < blocks.getSizeZ(); z++) {
+                final int worldX = minX + x, worldZ = minZ + z;
+                final ChunkSnapshot snapshot = snapshots[chunkIndex(worldX >> 4, worldZ >> 4)];
+
+                for (int y = 0; y < blocks.getSizeY(); y++) {
+                    final BlockInfo info = BlockInfo.of(snapshot, worldX & 15, minY + y, worldZ & 15);
+
+                    if (info.getType() != Material.AIR) {
+                        blocks.set(x, y, z, info);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reorders the given positions so that positions in the same chunk are next to each other, which lets them be
+     * written as one batch per chunk.
+     */
+    int[] groupByChunk(final int[] indices) {
+        final int[] offsets = new int[snapshots.length + 1];
+
+        for (final int index : indices) {
+            offsets[chunkOf(index) + 1]++;
+        }
+
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+
+        final int[] result = new int[indices.length];
+
+        for (final int index : indices) {
+            result[offsets[chunkOf(index)]++] = index;
+        }
+
+        return result;
+    }
+
+    private int chunkOf(final int index) {
+        return chunkIndex((minX + blocks.getX(index)) >> 4, (minZ + blocks.getZ(index)) >> 4);
+    }
+
+    private static Method getMinHeightMethod() {
+        try {
+            return World.class.getMethod("getMinHeight");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    private static int getMinHeight(final World world) {
+        if (GET_MIN_HEIGHT == null) {
+            return 0;
+        }
+
+        try {
+            return (int) GET_MIN_HEIGHT.invoke(world);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            return 0;
+        }
+    }
+
+    private int chunkIndex(final int chunkX, final int chunkZ) {
+        return (chunkX - minChunkX) * (maxChunkZ - minChunkZ + 1) + chunkZ - minChunkZ;
+    }
+}
@@ -0,0 +1,94 @@
+package me.realized.de.arenaregen.zone;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import me.realized.de.arenaregen.zone.snapshot.EntityInfo;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+
+/**
+ * The tracked entities of a zone, see {@link EntityInfo}. Only the entities of the zone's own chunks are ever looked at.
+ */
+class ZoneEntities {
+
+    private final Location min, max;
+    private final List<EntityInfo> entities;
+
+    ZoneEntities(final Location min, final Location max, final List<EntityInfo> entities) {
+        this.min = min;
+        this.max = max;
+        this.entities = new ArrayList<>(entities);
+    }
+
+    List<EntityInfo> getEntities() {
+        return Collections.unmodifiableList(entities);
+    }
+
+    /**
+     * Adds the tracked entities of the chunk that are inside of the zone.
+     */
+    void capture(final Chunk chunk) {
+        for (final Entity entity : chunk.getEntities()) {
+            if (EntityInfo.isTracked(entity) && contains(entity.getLocation())) {
+                entities.add(EntityInfo.of(entity));
+            }
+        }
+    }
+
+    /**
+     * Brings the zone's entities back to their stored state. Entities that still match an entry are left alone, others
+     * are removed, and entries left without a matching entity are spawned. Blocks must be restored first, so that
+     * hanging entities have their supporting blocks. Chunks that are not loaded are skipped rather than loaded, their
+     * entities were saved with them and are left as they are.
+     */
+    void restore() {
+        final World world = min.getWorld();
+        final boolean[] matched = new boolean[entities.size()];
+
+        for (int chunkX = min.getBlockX() >> 4; chunkX <= max.getBlockX() >> 4; chunkX++) {
+            for (int chunkZ = min.getBlockZ() >> 4; chunkZ <= max.getBlockZ() >> 4; chunkZ++) {
+                if (!world.isChunkLoaded(chunkX, chunkZ)) {
+                    continue;
+                }
+
+                for (final Entity entity : world.getChunkAt(chunkX, chunkZ).getEntities()) {
+                    if (!EntityInfo.isTracked(entity) || !contains(entity.getLocation())) {
+                        continue;
+                    }
+
+                    if (!match(entity, matched)) {
+                        entity.remove();
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < matched.length; i++) {
+            final EntityInfo info = entities.get(i);
+
+            if (!matched[i] && world.isChunkLoaded((int) Math.floor(info.getX()) >> 4, (int) Math.floor(info.getZ()) >> 4)) {
+                info.spawn(world);
+            }
+        }
+    }
+
+    private boolean match(final Entity entity, final boolean[] matched) {
+        for (int i = 0; i < matched.length; i++) {
+            if (!matched[i] && entities.get(i).matches(entity)) {
+                matched[i] = true;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean contains(final Location location) {
+        return location.getBlockX() >= min.getBlockX() && location.getBlockX() <= max.getBlockX()
+            && location.getBlockY() >= min.getBlockY() && location.getBlockY() <= max.getBlockY()
+            && location.getBlockZ() >= min.getBlockZ() && location.getBlockZ() <= max.getBlockZ();
+    }
+}
@@ -0,0 +1,182 @@
+package me.realized.de.arenaregen.zone;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.bukkit.World;
+
+/**
+ * Maps chunks to the zones overlapping them, so that block events can find their zone without going over every zone.
+ * Keys combine a per-world id with the chunk coordinates, so chunks at the same coordinates in different worlds do not
+ * share an entry. Zones returned for a chunk still have to be checked against the event's position. Backed by an
+ * open-addressing table of primitive keys, so lookups do not allocate.
+ */
+class ZoneIndex {
+
+    private static final ResetZone[] NONE = new ResetZone[0];
+
+    // Chunk coordinates stay within 22 bits inside of the world border, which leaves 20 bits for the world id.
+    private static final int COORD_BITS = 22;
+    private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+
+    // Ids are handed out the first time a world has a zone and kept afterwards, since there are only a few worlds.
+    private final Map<UUID, Integer> worldIds = new HashMap<>();
+    private long[] keys = new long[16];
+    private ResetZone[][] values = new ResetZone[16][];
+    private int size;
+
+    /**
+     * @return Zones overlapping the given chunk. The returned array must not be modified.
+     */
+    ResetZone[] get(final World world, final int chunkX, final int chunkZ) {
+        final Integer worldId = worldIds.get(world.getUID());
+        return worldId != null ? get(key(worldId, chunkX, chunkZ)) : NONE;
+    }
+
+    private ResetZone[] get(final long key) {
+        final int slot = find(key);
+        return slot >= 0 ? values[slot] : NONE;
+    }
+
+    void add(final ResetZone zone) {
+        final World world = zone.getMin().getWorld();
+        final int worldId = worldIds.computeIfAbsent(world.getUID(), uid -> worldIds.size());
+
+        forEachChunk(zone, (chunkX, chunkZ) -> {
+            final long key = key(worldId, chunkX, chunkZ);
+            final ResetZone[] current = get(key);
+            final ResetZone[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = zone;
+            put(key, updated);
+        });
+    }
+
+    // Chunks left without zones are removed from the table, so that their slots can be used again.
+    void remove(final ResetZone zone) {
+        final Integer worldId = worldIds.get(zone.getMin().getWorld().getUID());
+
+        if (worldId == null) {
+            return;
+        }
+
+        forEachChunk(zone, (chunkX, chunkZ) -> {
+            final long key = key(worldId, chunkX, chunkZ);
+            final int slot = find(key);
+
+            if (slot < 0) {
+                return;
+            }
+
+            final ResetZone[] updated = Arrays.stream(values[slot]).filter(other -> other != zone).toArray(ResetZone[]::new);
+
+            if (updated.length > 0) {
+                values[slot] = updated;
+            } else {
+                delete(slot);
+            }
+        });
+    }
+
+    // Returns the slot holding the key, or -1 if the table does not contain it.
+    private int find(final long key) {
+        final int mask = keys.length - 1;
+
+        for (int slot = slot(key, mask); values[slot] != null; slot = slot + 1 & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    private void put(final long key, final ResetZone[] value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length << 1);
+        }
+
+        final int mask = keys.length - 1;
+        int slot = slot(key, mask);
+
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+
+            slot = slot + 1 & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    // Empties the slot and moves later entries of the same probe run back into the gap, so that lookups still find
+    // them without leaving tombstones behind.
+    private void delete(final int slot) {
+        final int mask = keys.length - 1;
+        int gap = slot;
+
+        for (int next = gap + 1 & mask; values[next] != null; next = next + 1 & mask) {
+            final int home = slot(keys[next], mask);
+
+            // The entry may only move back if the gap lies between its home slot and its current slot.
+            if ((next - home & mask) >= (next - gap & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+
+        keys[gap] = 0;
+        values[gap] = null;
+        size--;
+    }
+
+    private void resize(final int capacity) {
+        final long[] oldKeys = keys;
+        final ResetZone[][] oldValues = values;
+        final int mask = capacity - 1;
+        keys = new long[capacity];
+        values = new ResetZone[capacity][];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == null) {
+                continue;
+            }
+
+            int slot = slot(oldKeys[i], mask);
+
+            while (values[slot] != null) {
+                slot = slot + 1 & mask;
+            }
+
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private static void forEachChunk(final ResetZone zone, final ChunkConsumer consumer) {
+        for (int chunkX = zone.getMin().getBlockX() >> 4; chunkX <= zone.getMax().getBlockX() >> 4; chunkX++) {
+            for (int chunkZ = zone.getMin().getBlockZ() >> 4; chunkZ <= zone.getMax().getBlockZ() >> 4; chunkZ++) {
+                consumer.accept(chunkX, chunkZ);
+            }
+        }
+    }
+
+    private static long key(final int worldId, final int chunkX, final int chunkZ) {
+        return (long) worldId << 2 * COORD_BITS | (chunkX & COORD_MASK) << COORD_BITS | chunkZ & COORD_MASK;
+    }
+
+    private static int slot(final long key, final int mask) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+
+    private interface ChunkConsumer {
+
+        void accept(final int chunkX, final int chunkZ);
+    }
+}
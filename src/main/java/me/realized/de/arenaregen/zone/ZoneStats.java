@@ -0,0 +1,111 @@
+package me.realized.de.arenaregen.zone;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * Counters and timings of a zone's resets, shown by the stats command and written to the metrics file. Values of the
+ * last reset describe the most recent reset that was completed. Only updated and read on the main thread.
+ */
+public class ZoneStats {
+
+    // Rough packet sizes before compression, only used to estimate the bytes sent to players
+    private static final int BLOCK_CHANGE_BYTES = 12, BYTES_PER_POSITION = 4, SECTION_BYTES = 2048 + 64;
+
+    @Getter
+    private long resets, abortedResets;
+    @Getter
+    private long totalChanged, chunkPackets, blockChangePackets, sentPositions, estimatedBytes;
+
+    // Last completed reset
+    @Getter
+    private long lastScanned, lastChanged, lastTicks;
+    @Getter
+    private double lastDurationMillis, lastIndexMillis, lastWriteMillis, lastLightMillis, lastMaxTickMillis, lastTickMillis;
+
+    // Reset in progress
+    private long started, scanned, changed, ticks, indexNanos, writeNanos, lightNanos, maxTickNanos, tickNanos;
+
+    void resetStarted() {
+        started = System.nanoTime();
+        scanned = changed = ticks = indexNanos = writeNanos = lightNanos = maxTickNanos = tickNanos = 0;
+    }
+
+    void recordTick(final long nanos) {
+        ticks++;
+        tickNanos += nanos;
+        maxTickNanos = Math.max(maxTickNanos, nanos);
+    }
+
+    void recordIndex(final long nanos, final long scanned, final long changed) {
+        this.indexNanos = nanos;
+        this.scanned = scanned;
+        this.changed = changed;
+    }
+
+    void recordWrite(final long nanos) {
+        writeNanos += nanos;
+    }
+
+    void recordLight(final long nanos) {
+        lightNanos += nanos;
+    }
+
+    void resetFinished() {
+        resets++;
+        totalChanged += changed;
+        lastDurationMillis = millis(System.nanoTime() - started);
+        lastScanned = scanned;
+        lastChanged = changed;
+        lastTicks = ticks;
+        lastIndexMillis = millis(indexNanos);
+        lastWriteMillis = millis(writeNanos);
+        lastLightMillis = millis(lightNanos);
+        lastMaxTickMillis = millis(maxTickNanos);
+        lastTickMillis = ticks > 0 ? millis(tickNanos) / ticks : 0;
+    }
+
+    void resetAborted() {
+        abortedResets++;
+    }
+
+    void recordChunkPacket(final int sections) {
+        chunkPackets++;
+        estimatedBytes += (long) sections * SECTION_BYTES;
+    }
+
+    void recordBlockChanges(final int positions) {
+        blockChangePackets++;
+        sentPositions += positions;
+        estimatedBytes += BLOCK_CHANGE_BYTES + (long) positions * BYTES_PER_POSITION;
+    }
+
+    /**
+     * @return Every value by name, in the order they are written to the metrics file.
+     */
+    public Map<String, Number> toMap() {
+        final Map<String, Number> values = new LinkedHashMap<>();
+        values.put("resets", resets);
+        values.put("aborted-resets", abortedResets);
+        values.put("total-changed", totalChanged);
+        values.put("chunk-packets", chunkPackets);
+        values.put("block-change-packets", blockChangePackets);
+        values.put("sent-positions", sentPositions);
+        values.put("estimated-bytes", estimatedBytes);
+        values.put("last-duration-ms", lastDurationMillis);
+        values.put("last-index-ms", lastIndexMillis);
+        values.put("last-scanned", lastScanned);
+        values.put("last-changed", lastChanged);
+        values.put("last-ticks", lastTicks);
+        values.put("last-tick-ms", lastTickMillis);
+        values.put("last-max-tick-ms", lastMaxTickMillis);
+        values.put("last-write-ms", lastWriteMillis);
+        values.put("last-light-ms", lastLightMillis);
+        return values;
+    }
+
+    static double millis(final long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
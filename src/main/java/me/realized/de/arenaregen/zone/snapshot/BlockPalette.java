@@ -0,0 +1,102 @@
+package me.realized.de.arenaregen.zone.snapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import me.realized.de.arenaregen.util.BlockInfo;
+
+/**
+ * Maps the distinct block states of a section to small integer ids. Id 0 is always air. Once resolved, the palette also
+ * holds the server's own state for every id, so that writing a block does not have to look its state up.
+ */
+public class BlockPalette {
+
+    public static final int AIR = 0;
+    public static final BlockInfo AIR_INFO = new BlockInfo();
+
+    private final List<BlockInfo> entries = new ArrayList<>();
+    private final Map<BlockInfo, Integer> ids = new HashMap<>();
+    // Server states by id, set by resolve. Palettes of shared sections are resolved once for every zone using them.
+    private volatile Object[] states;
+    // Global ids of the states, or null if an entry is not stored with its full state, see BlockInfo#hasFullState
+    private volatile int[] stateIds;
+
+    public BlockPalette() {
+        getOrAdd(AIR_INFO);
+    }
+
+    BlockPalette(final List<BlockInfo> entries) {
+        for (final BlockInfo info : entries) {
+            ids.put(info, this.entries.size());
+            this.entries.add(info);
+        }
+    }
+
+    public int getOrAdd(final BlockInfo info) {
+        final Integer id = ids.get(info);
+
+        if (id != null) {
+            return id;
+        }
+
+        ids.put(info, entries.size());
+        entries.add(info);
+        states = null;
+        stateIds = null;
+        return entries.size() - 1;
+    }
+
+    public BlockInfo get(final int id) {
+        return entries.get(id);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Resolves every entry to the server's own state and its global id unless the palette was already resolved. Block
+     * data is parsed here as well, so this has to be called on the main thread.
+     */
+    public void resolve(final Function<BlockInfo, Object> resolver, final ToIntFunction<Object> stateIds) {
+        if (states != null) {
+            return;
+        }
+
+        final Object[] result = new Object[entries.size()];
+        int[] ids = new int[result.length];
+
+        for (int id = 0; id < result.length; id++) {
+            final BlockInfo info = entries.get(id);
+            info.parse();
+            result[id] = resolver.apply(info);
+
+            if (ids != null && info.hasFullState()) {
+                ids[id] = stateIds.applyAsInt(result[id]);
+            } else {
+                ids = null;
+            }
+        }
+
+        this.stateIds = ids;
+        states = result;
+    }
+
+    /**
+     * @return The server's own state of the entry. The palette must have been resolved.
+     */
+    public Object getState(final int id) {
+        return states[id];
+    }
+
+    /**
+     * @return The global ids of the server's states by palette id, or null if comparing them does not give the same
+     * result as {@link BlockInfo#matches(org.bukkit.ChunkSnapshot, int, int, int)}. The palette must have been resolved.
+     */
+    public int[] getStateIds() {
+        return stateIds;
+    }
+}
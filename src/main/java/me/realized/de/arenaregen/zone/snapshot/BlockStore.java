@@ -0,0 +1,201 @@
+package me.realized.de.arenaregen.zone.snapshot;
+
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import lombok.Getter;
+import me.realized.de.arenaregen.util.BlockInfo;
+
+/**
+ * Block states of a zone, stored in 16x16x16 sections laid out relative to the zone's minimum corner. Sections that only
+ * contain air are not allocated. Once interned, sections are shared with every other zone that has a section with the
+ * same contents. All coordinates are local to the zone.
+ */
+public class BlockStore {
+
+    public static final int SECTION_SIZE = 16;
+    public static final int SECTION_VOLUME = SECTION_SIZE * SECTION_SIZE * SECTION_SIZE;
+
+    @Getter
+    private final int sizeX, sizeY, sizeZ;
+    @Getter
+    private final int sectionsX, sectionsY, sectionsZ;
+    private final SectionData[] sections;
+    @Getter
+    private int nonAirBlocks;
+    // Server state of air, used for positions in sections that are not allocated
+    private Object airState;
+    private int airStateId;
+
+    BlockStore(final int sizeX, final int sizeY, final int sizeZ, final SectionData[] sections) {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.sectionsX = sectionsFor(sizeX);
+        this.sectionsY = sectionsFor(sizeY);
+        this.sectionsZ = sectionsFor(sizeZ);
+
+        if (sections.length != sectionsX * sectionsY * sectionsZ) {
+            throw new IllegalArgumentException("Expected " + sectionsX * sectionsY * sectionsZ + " sections, got " + sections.length);
+        }
+
+        this.sections = sections;
+
+        for (final SectionData section : sections) {
+            if (section != null) {
+                nonAirBlocks += section.getNonAirBlocks();
+            }
+        }
+    }
+
+    public BlockStore(final int sizeX, final int sizeY, final int sizeZ) {
+        this(sizeX, sizeY, sizeZ, new SectionData[sectionsFor(sizeX) * sectionsFor(sizeY) * sectionsFor(sizeZ)]);
+    }
+
+    public boolean isAir(final int x, final int y, final int z) {
+        final SectionData section = sections[sectionIndex(x, y, z)];
+        return section == null || section.getId(indexInSection(x, y, z)) == BlockPalette.AIR;
+    }
+
+    public BlockInfo get(final int x, final int y, final int z) {
+        final SectionData section = sections[sectionIndex(x, y, z)];
+        return section != null ? section.get(indexInSection(x, y, z)) : BlockPalette.AIR_INFO;
+    }
+
+    /**
+     * @return The server's own state of the block at the position. The store must have been resolved.
+     */
+    public Object getState(final int x, final int y, final int z) {
+        final SectionData section = sections[sectionIndex(x, y, z)];
+        return section != null ? section.getState(indexInSection(x, y, z)) : airState;
+    }
+
+    /**
+     * Must not be called once the store was interned.
+     */
+    public void set(final int x, final int y, final int z, final BlockInfo info) {
+        final int sectionIndex = sectionIndex(x, y, z);
+        SectionData section = sections[sectionIndex];
+
+        if (section == null) {
+            if (info.equals(BlockPalette.AIR_INFO)) {
+                return;
+            }
+
+            section = sections[sectionIndex] = new SectionData();
+        }
+
+        final int previous = section.getNonAirBlocks();
+        section.set(indexInSection(x, y, z), info);
+        nonAirBlocks += section.getNonAirBlocks() - previous;
+    }
+
+    /**
+     * Replaces every section with the equal section held by the store, adding the sections the store does not hold yet.
+     * Each section stays referenced until {@link #release(SectionStore)} is called.
+     */
+    public void intern(final SectionStore store) {
+        for (int i = 0; i < sections.length; i++) {
+            if (sections[i] != null) {
+                sections[i] = store.acquire(sections[i]);
+            }
+        }
+    }
+
+    /**
+     * Resolves the palettes of every section to the server's own states, which {@link #getState(int, int, int)} returns,
+     * and their global ids. Meant to be called once the store was interned, since sections that were already resolved
+     * for another zone are skipped.
+     */
+    public void resolve(final Function<BlockInfo, Object> resolver, final ToIntFunction<Object> stateIds) {
+        airState = resolver.apply(BlockPalette.AIR_INFO);
+        airStateId = stateIds.applyAsInt(airState);
+
+        for (final SectionData section : sections) {
+            if (section != null) {
+                section.getPalette().resolve(resolver, stateIds);
+            }
+        }
+    }
+
+    /**
+     * @return The global id of the state of air, which fills positions without a section. The store must have been
+     * resolved.
+     */
+    public int getAirStateId() {
+        return airStateId;
+    }
+
+    /**
+     * @return A store with the same contents that shares every section with this store instead of copying it. The
+     * sections are acquired again, so each store has to be released separately. The store must have been interned.
+     */
+    public BlockStore copy(final SectionStore store) {
+        final SectionData[] copied = new SectionData[sections.length];
+
+        for (int i = 0; i < sections.length; i++) {
+            if (sections[i] != null) {
+                copied[i] = store.acquire(sections[i]);
+            }
+        }
+
+        final BlockStore copy = new BlockStore(sizeX, sizeY, sizeZ, copied);
+        copy.airState = airState;
+        copy.airStateId = airStateId;
+        return copy;
+    }
+
+    public void release(final SectionStore store) {
+        for (final SectionData section : sections) {
+            if (section != null) {
+                store.release(section);
+            }
+        }
+    }
+
+    public int getVolume() {
+        return sizeX * sizeY * sizeZ;
+    }
+
+    /**
+     * @return The position as a single index in [0, {@link #getVolume()}), ordered by x, then z, then y.
+     */
+    public int toIndex(final int x, final int y, final int z) {
+        return (y * sizeZ + z) * sizeX + x;
+    }
+
+    public int getX(final int index) {
+        return index % sizeX;
+    }
+
+    public int getY(final int index) {
+        return index / (sizeX * sizeZ);
+    }
+
+    public int getZ(final int index) {
+        return index / sizeX % sizeZ;
+    }
+
+    public int getSectionCount() {
+        return sections.length;
+    }
+
+    /**
+     * @param index Index of the section, ordered by x, then z, then y.
+     * @return The section or null if the section only contains air.
+     */
+    public SectionData getSection(final int index) {
+        return sections[index];
+    }
+
+    private int sectionIndex(final int x, final int y, final int z) {
+        return ((y >> 4) * sectionsZ + (z >> 4)) * sectionsX + (x >> 4);
+    }
+
+    private static int indexInSection(final int x, final int y, final int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | x & 15;
+    }
+
+    private static int sectionsFor(final int size) {
+        return (size + SECTION_SIZE - 1) / SECTION_SIZE;
+    }
+}
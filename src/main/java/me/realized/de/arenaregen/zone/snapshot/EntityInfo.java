@@ -0,0 +1,227 @@
+package me.realized.de.arenaregen.zone.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import lombok.Getter;
+import org.bukkit.Art;
+import org.bukkit.Location;
+import org.bukkit.Rotation;
+import org.bukkit.World;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.ArmorStand;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Hanging;
+import org.bukkit.entity.ItemFrame;
+import org.bukkit.entity.Painting;
+import org.bukkit.inventory.EntityEquipment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+/**
+ * State of an entity that is part of a zone: ender crystals, armor stands, item frames and paintings. Hanging entities
+ * are identified by their block and facing, other entities by their exact position.
+ */
+public final class EntityInfo {
+
+    private static final double EPSILON = 1.0E-3;
+
+    private static final int SMALL = 1, ARMS = 2, BASE_PLATE = 4, VISIBLE = 8;
+
+    @Getter
+    private final EntityType type;
+    @Getter
+    private final double x, y, z;
+    @Getter
+    private final float yaw, pitch;
+    // Facing of hanging entities, null for others
+    @Getter
+    private final BlockFace facing;
+    // Art of paintings or rotation of item frames, null for others
+    @Getter
+    private final String variant;
+    // Armor stand options
+    @Getter
+    private final int flags;
+    // Item of item frames, or the armor contents followed by the held item of armor stands
+    private final ItemStack[] items;
+
+    public EntityInfo(final EntityType type, final double x, final double y, final double z, final float yaw, final float pitch, final BlockFace facing,
+            final String variant, final int flags, final ItemStack[] items) {
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.yaw = yaw;
+        this.pitch = pitch;
+        this.facing = facing;
+        this.variant = variant;
+        this.flags = flags;
+        this.items = items;
+    }
+
+    /**
+     * @return An ender crystal at the given position, the only entity stored by older zone files.
+     */
+    public static EntityInfo crystal(final double x, final double y, final double z) {
+        return new EntityInfo(EntityType.ENDER_CRYSTAL, x, y, z, 0, 0, null, null, 0, new ItemStack[0]);
+    }
+
+    /**
+     * @return The same entity moved by the given offset.
+     */
+    public EntityInfo translate(final int dx, final int dy, final int dz) {
+        return new EntityInfo(type, x + dx, y + dy, z + dz, yaw, pitch, facing, variant, flags, items);
+    }
+
+    public static boolean isTracked(final Entity entity) {
+        switch (entity.getType()) {
+            case ENDER_CRYSTAL:
+            case ARMOR_STAND:
+            case ITEM_FRAME:
+            case PAINTING:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return The entity's state or null if the entity is not tracked.
+     */
+    @SuppressWarnings("deprecation")
+    public static EntityInfo of(final Entity entity) {
+        if (!isTracked(entity)) {
+            return null;
+        }
+
+        final Location location = entity.getLocation();
+        BlockFace facing = null;
+        String variant = null;
+        int flags = 0;
+        ItemStack[] items = new ItemStack[0];
+
+        if (entity instanceof ArmorStand) {
+            final ArmorStand stand = (ArmorStand) entity;
+            flags = (stand.isSmall() ? SMALL : 0) | (stand.hasArms() ? ARMS : 0) | (stand.hasBasePlate() ? BASE_PLATE : 0) | (stand.isVisible() ? VISIBLE : 0);
+
+            final EntityEquipment equipment = stand.getEquipment();
+            final ItemStack[] armor = equipment.getArmorContents();
+            items = Arrays.copyOf(armor, armor.length + 1);
+            items[armor.length] = equipment.getItemInHand();
+        } else if (entity instanceof Hanging) {
+            facing = ((Hanging) entity).getFacing();
+
+            if (entity instanceof ItemFrame) {
+                variant = ((ItemFrame) entity).getRotation().name();
+                items = new ItemStack[] {((ItemFrame) entity).getItem()};
+            } else if (entity instanceof Painting) {
+                variant = ((Painting) entity).getArt().name();
+            }
+
+            // Hanging entities are kept in place by their block, so store that instead of their exact position.
+            return new EntityInfo(entity.getType(), location.getBlockX(), location.getBlockY(), location.getBlockZ(), 0, 0, facing, variant, flags, items);
+        }
+
+        return new EntityInfo(entity.getType(), location.getX(), location.getY(), location.getZ(), location.getYaw(), location.getPitch(), facing, variant, flags,
+            items);
+    }
+
+    /**
+     * @return true if the entity is in the state described by this info.
+     */
+    public boolean matches(final Entity entity) {
+        if (entity.getType() != type) {
+            return false;
+        }
+
+        final EntityInfo other = of(entity);
+        return other != null
+            && Math.abs(other.x - x) < EPSILON && Math.abs(other.y - y) < EPSILON && Math.abs(other.z - z) < EPSILON
+            && Math.abs(other.yaw - yaw) < EPSILON && Math.abs(other.pitch - pitch) < EPSILON
+            && other.facing == facing
+            && (variant == null ? other.variant == null : variant.equals(other.variant))
+            && other.flags == flags
+            && Arrays.equals(other.items, items);
+    }
+
+    /**
+     * Spawns an entity in the state described by this info. Hanging entities need their supporting block to be in place.
+     */
+    @SuppressWarnings("deprecation")
+    public Entity spawn(final World world) {
+        final Location location = new Location(world, x, y, z, yaw, pitch);
+
+        switch (type) {
+            case ARMOR_STAND:
+                final ArmorStand stand = world.spawn(location, ArmorStand.class);
+                stand.setSmall((flags & SMALL) != 0);
+                stand.setArms((flags & ARMS) != 0);
+                stand.setBasePlate((flags & BASE_PLATE) != 0);
+                stand.setVisible((flags & VISIBLE) != 0);
+
+                if (items.length > 0) {
+                    stand.getEquipment().setArmorContents(Arrays.copyOf(items, items.length - 1));
+                    stand.getEquipment().setItemInHand(items[items.length - 1]);
+                }
+
+                return stand;
+            case ITEM_FRAME:
+                final ItemFrame frame = world.spawn(location, ItemFrame.class);
+                frame.setFacingDirection(facing, true);
+
+                if (items.length > 0) {
+                    frame.setItem(items[0]);
+                }
+
+                if (variant != null) {
+                    frame.setRotation(Rotation.valueOf(variant));
+                }
+
+                return frame;
+            case PAINTING:
+                final Painting painting = world.spawn(location, Painting.class);
+                painting.setFacingDirection(facing, true);
+
+                if (variant != null && Art.getByName(variant) != null) {
+                    painting.setArt(Art.getByName(variant), true);
+                }
+
+                return painting;
+            default:
+                return world.spawnEntity(location, type);
+        }
+    }
+
+    /**
+     * @return The items serialized with Bukkit's object stream, or an empty array if there are none.
+     */
+    public byte[] serializeItems() throws IOException {
+        if (items.length == 0) {
+            return new byte[0];
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (BukkitObjectOutputStream out = new BukkitObjectOutputStream(bytes)) {
+            out.writeObject(items);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    public static ItemStack[] deserializeItems(final byte[] data) throws IOException {
+        if (data.length == 0) {
+            return new ItemStack[0];
+        }
+
+        try (BukkitObjectInputStream in = new BukkitObjectInputStream(new ByteArrayInputStream(data))) {
+            return (ItemStack[]) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException ex) {
+            throw new IOException("Invalid item data", ex);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package me.realized.de.arenaregen.zone.snapshot;
+
+import java.util.Arrays;
+import lombok.Getter;
+import me.realized.de.arenaregen.util.BlockInfo;
+import me.realized.de.arenaregen.util.PackedIndexArray;
+
+/**
+ * Block states of one 16x16x16 section with its own palette, so that sections with the same contents are equal no
+ * matter which zone they belong to. Sections are only modified while a zone's blocks are loaded; once handed to a
+ * {@link SectionStore} they are shared and must not change anymore.
+ */
+public final class SectionData {
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    @Getter
+    private final BlockPalette palette;
+    private PackedIndexArray ids;
+    @Getter
+    private int nonAirBlocks;
+    private long hash;
+
+    SectionData(final BlockPalette palette, final PackedIndexArray ids, final int nonAirBlocks) {
+        this.palette = palette;
+        this.ids = ids;
+        this.nonAirBlocks = nonAirBlocks;
+    }
+
+    SectionData() {
+        this(new BlockPalette(), new PackedIndexArray(BlockStore.SECTION_VOLUME, 1), 0);
+    }
+
+    /**
+     * @param index Position in the section packed as y << 8 | z << 4 | x.
+     */
+    public int getId(final int index) {
+        return ids.get(index);
+    }
+
+    public BlockInfo get(final int index) {
+        return palette.get(ids.get(index));
+    }
+
+    /**
+     * @return The server's own state of the block. The palette must have been resolved.
+     */
+    public Object getState(final int index) {
+        return palette.getState(ids.get(index));
+    }
+
+    void set(final int index, final BlockInfo info) {
+        final int id = palette.getOrAdd(info);
+
+        if (id > ids.getMaxValue()) {
+            ids = ids.resize(PackedIndexArray.bitsFor(palette.size() - 1));
+        }
+
+        final int previous = ids.get(index);
+
+        if (previous == BlockPalette.AIR && id != BlockPalette.AIR) {
+            nonAirBlocks++;
+        } else if (previous != BlockPalette.AIR && id == BlockPalette.AIR) {
+            nonAirBlocks--;
+        }
+
+        ids.set(index, id);
+        hash = 0;
+    }
+
+    /**
+     * @return The palette ids. Exposed for serialization only and must not be modified.
+     */
+    public PackedIndexArray getIds() {
+        return ids;
+    }
+
+    /**
+     * @return A copy of this section whose palette lists the blocks in order of their first position, with air first,
+     * and whose ids use as few bits as possible. Sections with the same blocks have the same canonical form.
+     */
+    SectionData canonical() {
+        final SectionData result = new SectionData(new BlockPalette(), new PackedIndexArray(BlockStore.SECTION_VOLUME, PackedIndexArray.bitsFor(palette.size() - 1)), 0);
+        final int[] remapped = new int[palette.size()];
+        Arrays.fill(remapped, -1);
+        remapped[BlockPalette.AIR] = BlockPalette.AIR;
+
+        for (int i = 0; i < BlockStore.SECTION_VOLUME; i++) {
+            final int id = ids.get(i);
+
+            if (remapped[id] == -1) {
+                remapped[id] = result.palette.getOrAdd(palette.get(id));
+            }
+
+            result.ids.set(i, remapped[id]);
+        }
+
+        result.nonAirBlocks = nonAirBlocks;
+
+        final int bits = PackedIndexArray.bitsFor(result.palette.size() - 1);
+        return bits != result.ids.getBits() ? new SectionData(result.palette, result.ids.resize(bits), nonAirBlocks) : result;
+    }
+
+    /**
+     * @return 64-bit hash of the palette and ids, never 0. Every value is passed through a finalizer with full avalanche
+     * before the next one is mixed in, so that differences cannot cancel out. Only stable across restarts for canonical
+     * sections.
+     */
+    public long getHash() {
+        if (hash != 0) {
+            return hash;
+        }
+
+        long result = SEED;
+
+        for (int id = 0; id < palette.size(); id++) {
+            final BlockInfo info = palette.get(id);
+            result = mix(result ^ info.getType().name().hashCode());
+            result = mix(result ^ info.getData());
+            result = mix(result ^ (info.getBlockData() != null ? info.getBlockData().hashCode() : 0));
+        }
+
+        result = mix(result ^ ids.getBits());
+
+        for (final long value : ids.getData()) {
+            result = mix(result ^ value);
+        }
+
+        return hash = result != 0 ? result : 1;
+    }
+
+    // Finalizer of MurmurHash3, every input bit affects every output bit
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) { return true; }
+        if (other == null || getClass() != other.getClass()) { return false; }
+        final SectionData section = (SectionData) other;
+
+        if (getHash() != section.getHash() || palette.size() != section.palette.size() || ids.getBits() != section.ids.getBits()) {
+            return false;
+        }
+
+        for (int id = 0; id < palette.size(); id++) {
+            if (!palette.get(id).equals(section.palette.get(id))) {
+                return false;
+            }
+        }
+
+        return Arrays.equals(ids.getData(), section.ids.getData());
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(getHash());
+    }
+}
@@ -0,0 +1,252 @@
+package me.realized.de.arenaregen.zone.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import me.realized.de.arenaregen.util.BlockInfo;
+import me.realized.de.arenaregen.util.PackedIndexArray;
+import org.bukkit.Material;
+
+/**
+ * Holds the sections of every loaded zone by content hash, so that zones built from the same blocks share their sections
+ * in memory and on disk. Sections are reference counted and dropped from memory once no zone uses them anymore. Files
+ * are only deleted by {@link #sweep(Set)}, since zone files that are not loaded may still refer to them.
+ *
+ * <pre>
+ * int      magic ("ARSC")
+ * short    version
+ * int      palette size, followed by (string material, byte data, string block data) per entry. Entry 0 is always air.
+ *          The block data is empty for entries without one.
+ * byte     bits per id, followed by long[] packed palette ids
+ * </pre>
+ *
+ * Section files are named after the hash of their contents and never change once written. Methods are thread-safe, and
+ * callers that have to keep sections from being swept between two calls synchronize on the store.
+ */
+public class SectionStore {
+
+    public static final String EXTENSION = ".section";
+
+    private static final int MAGIC = 0x41525343;
+    private static final int VERSION = 1;
+
+    private final File folder;
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    public SectionStore(final File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * @return The section held by the store that is equal to the given section. The given section is added in its
+     * canonical form if the store has no equal section yet.
+     */
+    public synchronized SectionData acquire(final SectionData section) {
+        final SectionData canonical = section.canonical();
+        final Entry entry = entries.get(canonical.getHash());
+
+        if (entry == null) {
+            entries.put(canonical.getHash(), new Entry(canonical));
+            return canonical;
+        }
+
+        // Different contents with the same hash are not shared. Writing such a section fails instead of replacing or
+        // skipping the file of the other one.
+        if (!entry.section.equals(canonical)) {
+            return canonical;
+        }
+
+        entry.references++;
+        return entry.section;
+    }
+
+    public synchronized void release(final SectionData section) {
+        final Entry entry = entries.get(section.getHash());
+
+        if (entry != null && entry.section == section && --entry.references == 0) {
+            entries.remove(section.getHash());
+        }
+    }
+
+    /**
+     * Acquires the section with the given hash, reading it from its file if no loaded zone uses it.
+     */
+    public SectionData load(final long hash) throws IOException {
+        synchronized (this) {
+            final Entry entry = entries.get(hash);
+
+            if (entry != null) {
+                entry.references++;
+                return entry.section;
+            }
+        }
+
+        final SectionData section = read(file(hash));
+
+        if (section.getHash() != hash) {
+            throw new IOException(file(hash).getName() + " does not match its hash");
+        }
+
+        return acquire(section);
+    }
+
+    /**
+     * Writes the section to its file. An existing file is kept if it holds the same section.
+     *
+     * @throws IOException if the file holds a different section with the same hash.
+     */
+    public synchronized void write(final SectionData section) throws IOException {
+        final File file = file(section.getHash());
+        final Entry entry = entries.get(section.getHash());
+        final boolean shared = entry != null && entry.section == section;
+
+        // Already written or read by this store
+        if (shared && entry.written) {
+            return;
+        }
+
+        if (file.exists()) {
+            if (!read(file).equals(section.canonical())) {
+                throw new IOException(file.getName() + " holds a different section with the same hash");
+            }
+
+            if (shared) {
+                entry.written = true;
+            }
+
+            return;
+        }
+
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+
+        ZoneFile.writeAtomically(file, out -> {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+
+            final BlockPalette palette = section.getPalette();
+            out.writeInt(palette.size());
+
+            for (int id = 0; id < palette.size(); id++) {
+                final BlockInfo info = palette.get(id);
+                ZoneFile.writeString(out, info.getType().name());
+                out.writeByte(info.getData());
+                ZoneFile.writeString(out, info.getBlockData() != null ? info.getBlockData() : "");
+            }
+
+            final PackedIndexArray ids = section.getIds();
+            out.writeByte(ids.getBits());
+
+            for (final long value : ids.getData()) {
+                out.writeLong(value);
+            }
+        });
+
+        if (shared) {
+            entry.written = true;
+        }
+    }
+
+    /**
+     * Deletes the files of sections that are neither referenced nor used by a loaded zone.
+     *
+     * @param referenced Hashes of the sections referenced by every zone file.
+     * @return Number of deleted files.
+     */
+    public synchronized int sweep(final Set<Long> referenced) {
+        final File[] files = folder.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        int deleted = 0;
+
+        if (files == null) {
+            return 0;
+        }
+
+        for (final File file : files) {
+            final String name = file.getName();
+            final long hash;
+
+            try {
+                hash = Long.parseUnsignedLong(name.substring(0, name.length() - EXTENSION.length()), 16);
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+
+            if (!referenced.contains(hash) && !entries.containsKey(hash) && file.delete()) {
+                deleted++;
+            }
+        }
+
+        return deleted;
+    }
+
+    private File file(final long hash) {
+        return new File(folder, String.format("%016x", hash) + EXTENSION);
+    }
+
+    private static SectionData read(final File file) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a section file");
+            }
+
+            final int version = buffer.getShort();
+
+            if (version != VERSION) {
+                throw new IOException(file.getName() + " has unsupported version " + version);
+            }
+
+            final int paletteSize = buffer.getInt();
+            final List<BlockInfo> entries = new ArrayList<>(paletteSize);
+
+            for (int i = 0; i < paletteSize; i++) {
+                final Material type = ZoneFile.parseMaterial(ZoneFile.readString(buffer));
+                final byte data = buffer.get();
+                final String blockData = ZoneFile.readString(buffer);
+                entries.add(new BlockInfo(type, data, blockData.isEmpty() ? null : blockData));
+            }
+
+            if (entries.isEmpty() || !entries.get(BlockPalette.AIR).equals(BlockPalette.AIR_INFO)) {
+                throw new IOException(file.getName() + " has an invalid palette");
+            }
+
+            final int bits = buffer.get();
+            final long[] data = new long[PackedIndexArray.longsFor(BlockStore.SECTION_VOLUME, bits)];
+            buffer.asLongBuffer().get(data);
+
+            final PackedIndexArray ids = new PackedIndexArray(BlockStore.SECTION_VOLUME, bits, data);
+            int nonAirBlocks = 0;
+
+            for (int i = 0; i < BlockStore.SECTION_VOLUME; i++) {
+                if (ids.get(i) != BlockPalette.AIR) {
+                    nonAirBlocks++;
+                }
+            }
+
+            return new SectionData(new BlockPalette(entries), ids, nonAirBlocks);
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IOException(file.getName() + " is truncated or corrupted", ex);
+        }
+    }
+
+    private static class Entry {
+
+        private final SectionData section;
+        private int references = 1;
+        // Whether the section's file is known to hold this section
+        private boolean written;
+
+        Entry(final SectionData section) {
+            this.section = section;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package me.realized.de.arenaregen.zone.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import me.realized.de.arenaregen.util.BlockInfo;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.BlockFace;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.EntityType;
+
+/**
+ * Reads and writes the binary zone format.
+ *
+ * <pre>
+ * int      magic ("ARZN")
+ * short    version
+ * string   world name
+ * int[6]   min x, y, z and max x, y, z
+ * int      non-air block count
+ * int      section count, followed by the content hash of each section in the {@link SectionStore}. Air-only
+ *          sections are 0.
+ * int      entity count, followed by one entry per entity:
+ *          string type, double x, y, z, float yaw, pitch, string facing, string variant, byte flags,
+ *          int item data length, byte[] item data. See {@link EntityInfo}; empty strings stand for null.
+ * </pre>
+ *
+ * Zones saved in the old YAML format are read by {@link #readLegacy(File, SectionStore)}.
+ *
+ * Strings are written as an unsigned short length followed by UTF-8 bytes.
+ */
+public final class ZoneFile {
+
+    public static final String EXTENSION = ".zone";
+    public static final String LEGACY_EXTENSION = ".yml";
+
+    private static final int MAGIC = 0x41525A4E;
+    private static final int VERSION = 1;
+
+    private ZoneFile() {}
+
+    /**
+     * Reads the zone and acquires its sections from the store. The sections must be released once the snapshot is no
+     * longer used.
+     */
+    public static ZoneSnapshot read(final File file, final SectionStore store) throws IOException {
+        // Read the whole file at once and decode from memory instead of issuing small reads.
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        final List<SectionData> acquired = new ArrayList<>();
+
+        try {
+            readVersion(file, buffer);
+            final String worldName = readString(buffer);
+            final int minX = buffer.getInt(), minY = buffer.getInt(), minZ = buffer.getInt();
+            final int maxX = buffer.getInt(), maxY = buffer.getInt(), maxZ = buffer.getInt();
+            // Non-air block count, recomputed from the sections
+            buffer.getInt();
+
+            final SectionData[] sections = new SectionData[buffer.getInt()];
+
+            for (int i = 0; i < sections.length; i++) {
+                final long hash = buffer.getLong();
+                sections[i] = hash == 0 ? null : store.load(hash);
+
+                if (sections[i] != null) {
+                    acquired.add(sections[i]);
+                }
+            }
+
+            final int entityCount = buffer.getInt();
+            final List<EntityInfo> entities = new ArrayList<>(entityCount);
+
+            for (int i = 0; i < entityCount; i++) {
+                entities.add(readEntity(buffer));
+            }
+
+            final BlockStore blocks = new BlockStore(maxX - minX + 1, maxY - minY + 1, maxZ - minZ + 1, sections);
+            return new ZoneSnapshot(worldName, minX, minY, minZ, maxX, maxY, maxZ, blocks, entities);
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            acquired.forEach(store::release);
+            throw new IOException(file.getName() + " is truncated or corrupted", ex);
+        } catch (IOException ex) {
+            acquired.forEach(store::release);
+            throw ex;
+        }
+    }
+
+    private static EntityInfo readEntity(final ByteBuffer buffer) throws IOException {
+        final String typeName = readString(buffer);
+        final double x = buffer.getDouble(), y = buffer.getDouble(), z = buffer.getDouble();
+        final float yaw = buffer.getFloat(), pitch = buffer.getFloat();
+        final String facing = readString(buffer), variant = readString(buffer);
+        final int flags = buffer.get();
+        final byte[] items = new byte[buffer.getInt()];
+        buffer.get(items);
+
+        final EntityType type;
+
+        try {
+            type = EntityType.valueOf(typeName);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Unknown entity type '" + typeName + "'");
+        }
+
+        return new EntityInfo(type, x, y, z, yaw, pitch, facing.isEmpty() ? null : BlockFace.valueOf(facing), variant.isEmpty() ? null : variant, flags,
+            EntityInfo.deserializeItems(items));
+    }
+
+    /**
+     * @return Hashes of the sections the zone file refers to.
+     */
+    public static Set<Long> readSectionHashes(final File file) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        final Set<Long> hashes = new HashSet<>();
+
+        try {
+            readVersion(file, buffer);
+            readString(buffer);
+            // Skip the bounds and the non-air block count
+            buffer.position(buffer.position() + 7 * Integer.BYTES);
+
+            final int sections = buffer.getInt();
+
+            for (int i = 0; i < sections; i++) {
+                final long hash = buffer.getLong();
+
+                if (hash != 0) {
+                    hashes.add(hash);
+                }
+            }
+
+            return hashes;
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IOException(file.getName() + " is truncated or corrupted", ex);
+        }
+    }
+
+    private static void readVersion(final File file, final ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(file.getName() + " is not a zone file");
+        }
+
+        final int version = buffer.getShort();
+
+        if (version != VERSION) {
+            throw new IOException(file.getName() + " has unsupported version " + version);
+        }
+    }
+
+    /**
+     * Writes the zone's sections to the store, then the zone itself. Holds the store's lock throughout, so that a sweep
+     * cannot delete new sections before the zone file refers to them.
+     */
+    public static void write(final File file, final ZoneSnapshot snapshot, final SectionStore store) throws IOException {
+        final BlockStore blocks = snapshot.getBlocks();
+
+        synchronized (store) {
+            for (int i = 0; i < blocks.getSectionCount(); i++) {
+                if (blocks.getSection(i) != null) {
+                    store.write(blocks.getSection(i));
+                }
+            }
+
+            writeAtomically(file, out -> {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                writeString(out, snapshot.getWorldName());
+                out.writeInt(snapshot.getMinX());
+                out.writeInt(snapshot.getMinY());
+                out.writeInt(snapshot.getMinZ());
+                out.writeInt(snapshot.getMaxX());
+                out.writeInt(snapshot.getMaxY());
+                out.writeInt(snapshot.getMaxZ());
+                out.writeInt(blocks.getNonAirBlocks());
+                out.writeInt(blocks.getSectionCount());
+
+                for (int i = 0; i < blocks.getSectionCount(); i++) {
+                    final SectionData section = blocks.getSection(i);
+                    out.writeLong(section != null ? section.getHash() : 0);
+                }
+
+                out.writeInt(snapshot.getEntities().size());
+
+                for (final EntityInfo entity : snapshot.getEntities()) {
+                    writeString(out, entity.getType().name());
+                    out.writeDouble(entity.getX());
+                    out.writeDouble(entity.getY());
+                    out.writeDouble(entity.getZ());
+                    out.writeFloat(entity.getYaw());
+                    out.writeFloat(entity.getPitch());
+                    writeString(out, entity.getFacing() != null ? entity.getFacing().name() : "");
+                    writeString(out, entity.getVariant() != null ? entity.getVariant() : "");
+                    out.writeByte(entity.getFlags());
+
+                    final byte[] items = entity.serializeItems();
+                    out.writeInt(items.length);
+                    out.write(items);
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes to a temporary file next to the given file, then moves it over the given file. The given file is either
+     * left as it was or fully replaced, even if the server stops while writing.
+     */
+    static void writeAtomically(final File file, final Writer writer) throws IOException {
+        final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        final FileOutputStream stream = new FileOutputStream(temp);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            writer.write(out);
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException ex) {
+            temp.delete();
+            throw ex;
+        }
+
+        final Path source = temp.toPath(), target = file.toPath();
+
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a zone saved in the old per-block YAML format and interns its sections into the store.
+     */
+    public static ZoneSnapshot readLegacy(final File file, final SectionStore store) throws IOException {
+        final FileConfiguration config = YamlConfiguration.loadConfiguration(file);
+        final String worldName = config.getString("world");
+
+        if (worldName == null) {
+            throw new IOException(file.getName() + " has no world");
+        }
+
+        final int minX = config.getInt("min.x"), minY = config.getInt("min.y"), minZ = config.getInt("min.z");
+        final int maxX = config.getInt("max.x"), maxY = config.getInt("max.y"), maxZ = config.getInt("max.z");
+        final BlockStore blocks = new BlockStore(maxX - minX + 1, maxY - minY + 1, maxZ - minZ + 1);
+        final ConfigurationSection section = config.getConfigurationSection("blocks");
+
+        if (section != null) {
+            for (final String key : section.getKeys(false)) {
+                final String[] posData = key.split(";");
+                final String[] blockData = section.getString(key).split(";");
+                final BlockInfo info = new BlockInfo(parseMaterial(blockData[0]), Byte.parseByte(blockData[1]));
+                blocks.set(Integer.parseInt(posData[0]) - minX, Integer.parseInt(posData[1]) - minY, Integer.parseInt(posData[2]) - minZ, info);
+            }
+        }
+
+        final List<EntityInfo> entities = new ArrayList<>();
+        final ConfigurationSection entitySection = config.getConfigurationSection("entities");
+
+        if (entitySection != null) {
+            for (final String key : entitySection.getKeys(false)) {
+                final Location location = entitySection.getLocation(key + ".Location");
+
+                if (location != null) {
+                    entities.add(EntityInfo.crystal(location.getX(), location.getY(), location.getZ()));
+                }
+            }
+        }
+
+        blocks.intern(store);
+        return new ZoneSnapshot(worldName, minX, minY, minZ, maxX, maxY, maxZ, blocks, entities);
+    }
+
+    static Material parseMaterial(final String name) throws IOException {
+        final Material material = Material.getMaterial(name);
+
+        if (material == null) {
+            throw new IOException("Unknown material '" + name + "'");
+        }
+
+        return material;
+    }
+
+    static String readString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    interface Writer {
+
+        void write(final DataOutputStream out) throws IOException;
+    }
+}
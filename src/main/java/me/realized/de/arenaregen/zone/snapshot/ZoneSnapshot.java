@@ -0,0 +1,32 @@
+package me.realized.de.arenaregen.zone.snapshot;
+
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * Decoded contents of a zone file. Holds no references to loaded worlds.
+ */
+public class ZoneSnapshot {
+
+    @Getter
+    private final String worldName;
+    @Getter
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+    @Getter
+    private final BlockStore blocks;
+    @Getter
+    private final List<EntityInfo> entities;
+
+    public ZoneSnapshot(final String worldName, final int minX, final int minY, final int minZ, final int maxX, final int maxY, final int maxZ,
+            final BlockStore blocks, final List<EntityInfo> entities) {
+        this.worldName = worldName;
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        this.blocks = blocks;
+        this.entities = entities;
+    }
+}